@@ -0,0 +1,115 @@
+package org.github.im1235.eie;
+
+import org.github.im1235.eie.calibration.AkSolverFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tick and calibration hot paths of {@link IntensityEstimator}, sync and async
+ * Estimators are initialized with full window of data before measurement
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IntensityEstimatorBenchmark {
+
+    @Param({"600000", "3600000"})
+    long w;
+
+    @Param({"1000", "15000"})
+    long dt;
+
+    @Param({"5", "20"})
+    int nSpreads;
+
+    @Param({"LOG_REGRESSION", "MULTI_CURVE"})
+    AkSolverFactory.SolverType solverType;
+
+    private static final long TICK_INTERVAL = 250;
+
+    private TickData tickData;
+    private IntensityEstimator estimator;
+    private IntensityEstimator asyncEstimator;
+    private ExecutorService executor;
+    private long tickIdx;
+    private final MutableIntensityInfo out = new MutableIntensityInfo();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.tickData = new TickData(1 << 16, TICK_INTERVAL, 42);
+        AkSolverFactory sf = new AkSolverFactory(this.solverType);
+        this.executor = EstimationExecutor.workStealing(4);
+        this.estimator = new IntensityEstimator(TickData.TICK_SIZE, this.nSpreads, this.w, this.dt, sf);
+        this.asyncEstimator = new IntensityEstimator.Builder(TickData.TICK_SIZE, this.nSpreads, this.w, this.dt, sf)
+                .executor(this.executor)
+                .build();
+        // fill window so estimators are initialized
+        long warmupTicks = 2 * this.w / TICK_INTERVAL;
+        for (this.tickIdx = 0; this.tickIdx < warmupTicks; this.tickIdx++) {
+            nextTick(this.estimator);
+            nextTick(this.asyncEstimator);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.executor.shutdown();
+    }
+
+    private boolean nextTick(IntensityEstimator ie) {
+        int idx = (int) (this.tickIdx % this.tickData.size());
+        return ie.onTick(this.tickData.bids[idx], this.tickData.asks[idx], this.tickData.ts(this.tickIdx));
+    }
+
+    @Benchmark
+    public boolean onTick() {
+        boolean initialized = nextTick(this.estimator);
+        this.tickIdx++;
+        return initialized;
+    }
+
+    @Benchmark
+    @SuppressWarnings("deprecation") // baseline for TickEventLoop
+    public boolean onTickAsync() throws ExecutionException, InterruptedException {
+        int idx = (int) (this.tickIdx % this.tickData.size());
+        boolean initialized = this.asyncEstimator
+                .onTickAsync(this.tickData.bids[idx], this.tickData.asks[idx], this.tickData.ts(this.tickIdx))
+                .get();
+        this.tickIdx++;
+        return initialized;
+    }
+
+    @Benchmark
+    public IntensityInfo estimate() {
+        return this.estimator.estimate(this.tickData.ts(this.tickIdx));
+    }
+
+    @Benchmark
+    public MutableIntensityInfo estimateInto() {
+        return this.estimator.estimateInto(this.out, this.tickData.ts(this.tickIdx));
+    }
+
+    @Benchmark
+    public IntensityInfo estimateAsync() throws ExecutionException, InterruptedException {
+        return this.asyncEstimator.estimateAsync(this.tickData.ts(this.tickIdx)).get();
+    }
+
+}
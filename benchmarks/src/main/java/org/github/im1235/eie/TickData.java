@@ -0,0 +1,46 @@
+package org.github.im1235.eie;
+
+import java.util.Random;
+
+/**
+ * Generated level 1 tick data used by benchmarks, random walk of mid price with one tick spread
+ */
+public class TickData {
+
+    public static final double TICK_SIZE = 0.00001;
+
+    public final double[] bids;
+    public final double[] asks;
+    public final long tickInterval;
+
+    /**
+     * @param nTicks       number of generated ticks
+     * @param tickInterval time between ticks in time units
+     * @param seed         random seed
+     */
+    public TickData(int nTicks, long tickInterval, long seed) {
+        this.bids = new double[nTicks];
+        this.asks = new double[nTicks];
+        this.tickInterval = tickInterval;
+        Random rng = new Random(seed);
+        long midTicks = 100000;
+        for (int i = 0; i < nTicks; i++) {
+            midTicks += Math.round(rng.nextGaussian());
+            this.bids[i] = (midTicks - 1) * TICK_SIZE;
+            this.asks[i] = (midTicks + 1) * TICK_SIZE;
+        }
+    }
+
+    /**
+     * @param tickIdx running tick index
+     * @return time stamp of tick
+     */
+    public long ts(long tickIdx) {
+        return tickIdx * this.tickInterval;
+    }
+
+    public int size() {
+        return this.bids.length;
+    }
+
+}
@@ -0,0 +1,66 @@
+package org.github.im1235.eie.calibration;
+
+import org.github.im1235.eie.IntensityInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link AbstractAkSolver} implementations across number of spreads
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AkSolverBenchmark {
+
+    @Param({"5", "10", "50", "200"})
+    int nSpreads;
+
+    @Param({"LOG_REGRESSION", "MULTI_CURVE", "WEIGHTED_LOG_REGRESSION", "MULTI_CURVE_LINEAR", "THEIL_SEN"})
+    AkSolverFactory.SolverType solverType;
+
+    private AbstractAkSolver solver;
+    private double[] intensities;
+    private double[] fillCounts;
+    private final double[] ak = new double[2];
+
+    @Setup(Level.Trial)
+    public void setup() {
+        double spreadStep = 0.00001;
+        double a = 0.5;
+        double k = 20000;
+        double[] spreads = new double[this.nSpreads];
+        this.intensities = new double[this.nSpreads];
+        this.fillCounts = new double[this.nSpreads];
+        Random rng = new Random(42);
+        for (int i = 0; i < this.nSpreads; i++) {
+            spreads[i] = i * spreadStep;
+            // noisy spread intensity curve
+            this.intensities[i] = IntensityInfo.getIntensity(spreads[i], a, k) * (1 + 0.05 * rng.nextGaussian());
+            this.fillCounts[i] = 1 + (int) (1000 * this.intensities[i]);
+        }
+        this.solver = new AkSolverFactory(this.solverType).getSolver(spreads);
+    }
+
+    @Benchmark
+    public double[] solveAk() {
+        this.solver.solveAk(this.intensities, this.fillCounts, this.ak);
+        return this.ak;
+    }
+
+}
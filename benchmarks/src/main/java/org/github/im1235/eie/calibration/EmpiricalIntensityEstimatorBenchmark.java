@@ -0,0 +1,79 @@
+package org.github.im1235.eie.calibration;
+
+import org.github.im1235.eie.TickData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link EmpiricalIntensityEstimator#onTick} at different number of live trackers
+ * Number of trackers in the window is w / dt, spreads are wide enough that most trackers stay live
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmpiricalIntensityEstimatorBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    int liveTrackers;
+
+    @Param({"1000"})
+    long dt;
+
+    @Param({"5", "20"})
+    int nSpreads;
+
+    private static final long TICK_INTERVAL = 250;
+
+    private TickData tickData;
+    private EmpiricalIntensityEstimator estimator;
+    private double[] intensities;
+    private long w;
+    private long tickIdx;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.tickData = new TickData(1 << 16, TICK_INTERVAL, 42);
+        double[] spreads = new double[this.nSpreads];
+        for (int i = 0; i < this.nSpreads; i++) {
+            spreads[i] = (i + 1) * 5 * TickData.TICK_SIZE;
+        }
+        this.estimator = new EmpiricalIntensityEstimator(spreads, 1, this.dt);
+        this.intensities = new double[this.nSpreads];
+        this.w = this.liveTrackers * this.dt;
+        // fill window
+        long warmupTicks = 2 * this.w / TICK_INTERVAL;
+        for (this.tickIdx = 0; this.tickIdx < warmupTicks; this.tickIdx++) {
+            onTick();
+        }
+    }
+
+    @Benchmark
+    public void onTick() {
+        int idx = (int) (this.tickIdx % this.tickData.size());
+        long ts = this.tickData.ts(this.tickIdx++);
+        this.estimator.onTick((this.tickData.bids[idx] + this.tickData.asks[idx]) / 2, this.tickData.bids[idx], ts, ts - this.w);
+    }
+
+    @Benchmark
+    public double[] estimateIntensities() {
+        long ts = this.tickData.ts(this.tickIdx);
+        this.estimator.estimateIntensities(ts, ts - this.w, this.intensities);
+        return this.intensities;
+    }
+
+}
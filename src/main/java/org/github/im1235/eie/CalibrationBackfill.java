@@ -0,0 +1,160 @@
+package org.github.im1235.eie;
+
+import org.github.im1235.eie.calibration.WindowType;
+import org.github.im1235.eie.replay.TickConsumer;
+import org.github.im1235.eie.replay.TickReplay;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Calibrates A and k at every dt over historical ticks in parallel
+ * <p>
+ * Estimates are made at times origin + k * dt, where origin is time stamp of the first tick, starting once the first
+ * window w is covered. Estimate at time T is made after all ticks with time stamp up to T are processed.
+ * <p>
+ * Estimate times are split into partitions processed by independent estimators. Each partition warms up by replaying
+ * ticks from the last tick at or before its first estimate time - w and its trackers are aligned to origin
+ * ({@link IntensityEstimator.Builder#trackerOrigin}), so the stitched series is identical to the series of single
+ * estimator replaying whole history. Fills and waiting times of {@link WindowType#EXPONENTIAL_DECAY} estimators are
+ * not limited to w, their partitions warm up from the first tick. Time stamps of ticks must be non decreasing.
+ */
+public class CalibrationBackfill {
+
+    private final TickReplay replay;
+    private final IntensityEstimator.Builder builder;
+    private final int nPartitions;
+
+
+    /**
+     * @param replay      historical ticks
+     * @param builder     configuration of estimators, its tracker origin is replaced by time stamp of the first tick
+     * @param nPartitions number of partitions, few times the parallelism of executor balances uneven partitions
+     */
+    public CalibrationBackfill(TickReplay replay, IntensityEstimator.Builder builder, int nPartitions) {
+        if (nPartitions < 1) {
+            throw new IllegalArgumentException("number of partitions must be positive");
+        }
+        this.replay = replay;
+        this.builder = builder;
+        this.nPartitions = nPartitions;
+    }
+
+
+    /**
+     * @param executor runs partitions, e.g. {@link EstimationExecutor#workStealing}
+     * @return estimates ordered by time, empty if history is shorter than w
+     * @throws IOException
+     * @throws InterruptedException
+     * @throws ExecutionException
+     */
+    public IntensitySeries run(ExecutorService executor) throws IOException, InterruptedException, ExecutionException {
+        long w = this.builder.getW();
+        long dt = this.builder.getDt();
+        boolean decayed = this.builder.getWindowType() == WindowType.EXPONENTIAL_DECAY;
+        long count = this.replay.count();
+        if (count == 0) {
+            return new IntensitySeries(0, dt, new IntensityInfo[0]);
+        }
+        long origin = this.replay.timeStamp(0);
+        long firstTs = origin + Math.floorDiv(w + dt - 1, dt) * dt;
+        long lastTs = this.replay.timeStamp(count - 1);
+        int nEstimates = lastTs < firstTs ? 0 : Math.toIntExact((lastTs - firstTs) / dt + 1);
+        IntensityInfo[] estimates = new IntensityInfo[nEstimates];
+
+        // estimators are built in calling thread, builder is not shared with partitions
+        int nParts = Math.min(this.nPartitions, Math.max(nEstimates, 1));
+        List<Future<Void>> results = new ArrayList<>(nParts);
+        for (int p = 0; p < nParts; p++) {
+            int from = (int) ((long) nEstimates * p / nParts);
+            int to = (int) ((long) nEstimates * (p + 1) / nParts);
+            if (from == to) {
+                continue;
+            }
+            long partitionStart = firstTs + from * dt;
+            long partitionEnd = firstTs + (to - 1) * dt;
+            long fromTick = decayed ? 0 : Math.max(0, lastIndexAtOrBefore(partitionStart - w, count));
+            Partition partition = new Partition(this.builder.build(origin), estimates, from, to, partitionStart, dt,
+                    fromTick, lastIndexAtOrBefore(partitionEnd, count) + 1);
+            results.add(EstimationExecutor.submit(executor, partition));
+        }
+        for (Future<Void> result : results) {
+            result.get();
+        }
+        return new IntensitySeries(firstTs, dt, estimates);
+    }
+
+
+    /**
+     * @return index of the last tick with time stamp at or before ts, -1 if there is none
+     */
+    private long lastIndexAtOrBefore(long ts, long count) throws IOException {
+        long lo = 0;
+        long hi = count; // first index with time stamp after ts is in [lo, hi]
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (this.replay.timeStamp(mid) <= ts) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo - 1;
+    }
+
+
+    /**
+     * Replays ticks of one partition and writes its estimates to shared output array
+     */
+    private class Partition implements Callable<Void>, TickConsumer {
+        private final IntensityEstimator estimator;
+        private final IntensityInfo[] estimates;
+        private final int to;
+        private final long dt;
+        private final long fromTick;
+        private final long toTick;
+        private int next;
+        private long nextTs;
+
+        Partition(IntensityEstimator estimator, IntensityInfo[] estimates, int from, int to, long fromTs, long dt,
+                  long fromTick, long toTick) {
+            this.estimator = estimator;
+            this.estimates = estimates;
+            this.next = from;
+            this.to = to;
+            this.nextTs = fromTs;
+            this.dt = dt;
+            this.fromTick = fromTick;
+            this.toTick = toTick;
+        }
+
+        @Override
+        public void onTick(double bid, double ask, long ts) {
+            // ticks with time stamp up to estimate time have been processed
+            while (this.next < this.to && this.nextTs < ts) {
+                estimate();
+            }
+            this.estimator.onTick(bid, ask, ts);
+        }
+
+        @Override
+        public Void call() throws IOException {
+            replay.replay(this, this.fromTick, this.toTick);
+            while (this.next < this.to) {
+                estimate();
+            }
+            return null;
+        }
+
+        private void estimate() {
+            this.estimates[this.next++] = this.estimator.estimate(this.nextTs);
+            this.nextTs += this.dt;
+        }
+    }
+
+}
@@ -1,17 +1,26 @@
 package org.github.im1235.eie;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Provides unified access to global executor service
+ * Provides unified access to global executor service and factories of executors suitable for estimators
+ * <p>
+ * Executor can be scoped to single estimator with {@link IntensityEstimator.Builder#executor},
+ * global executor is used by estimators without own executor
  */
 public class EstimationExecutor {
 
-    private static ExecutorService executor;
+    private static volatile ExecutorService executor;
 
     /**
      * @param executor global executor that will run estimates
@@ -21,11 +30,110 @@ public class EstimationExecutor {
     }
 
     public static <T> Future<T> submit(Callable<T> c) {
-        return EstimationExecutor.executor.submit(c);
+        return globalExecutor().submit(c);
     }
 
     public static <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> cc) throws InterruptedException {
-        return EstimationExecutor.executor.invokeAll(cc);
+        return globalExecutor().invokeAll(cc);
+    }
+
+    /**
+     * @param executor executor scoped to estimator, global executor is used if null
+     * @param c        task
+     * @return future of the task
+     */
+    public static <T> Future<T> submit(ExecutorService executor, Callable<T> c) {
+        return (executor != null ? executor : globalExecutor()).submit(c);
+    }
+
+    /**
+     * @return global executor, null if not set
+     */
+    static ExecutorService getExecutor() {
+        return EstimationExecutor.executor;
+    }
+
+    private static ExecutorService globalExecutor() {
+        ExecutorService e = EstimationExecutor.executor;
+        if (e == null) {
+            throw new IllegalStateException("Global executor is not set, call EstimationExecutor.setExecutor " +
+                    "or pass executor to IntensityEstimator.Builder");
+        }
+        return e;
+    }
+
+
+    /**
+     * @param parallelism number of worker threads
+     * @return work stealing fork join pool
+     */
+    public static ExecutorService workStealing(int parallelism) {
+        return new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Requires Java 21 or newer runtime
+     *
+     * @return executor that starts new virtual thread for each task
+     * @throws UnsupportedOperationException if runtime does not support virtual threads
+     */
+    public static ExecutorService virtualThreadPerTask() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or newer runtime", e);
+        }
+    }
+
+    /**
+     * @return executor that runs each task inline in the calling thread
+     */
+    public static ExecutorService callerRuns() {
+        return new CallerRunsExecutorService();
+    }
+
+
+    /**
+     * Runs tasks in the thread that submits them, returned futures are already completed
+     */
+    private static class CallerRunsExecutorService extends AbstractExecutorService {
+        private volatile boolean shutdown = false;
+
+        @Override
+        public void execute(Runnable command) {
+            if (this.shutdown) {
+                throw new RejectedExecutionException("Executor has been shut down");
+            }
+            command.run();
+        }
+
+        @Override
+        public void shutdown() {
+            this.shutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            this.shutdown = true;
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return this.shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return this.shutdown;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return this.shutdown;
+        }
     }
 
 }
@@ -0,0 +1,247 @@
+package org.github.im1235.eie;
+
+import org.github.im1235.eie.calibration.SpreadIntensityCurve;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics of single estimator exported as MBean org.github.im1235.eie:type=IntensityEstimator,name=[name]
+ * <p>
+ * Enabled with {@link IntensityEstimator.Builder#metrics}, disabled estimators only check for null metrics.
+ * Recording is lock free and does not allocate, tracker counts and executor queue depth are read on request.
+ * Ticks passed through {@link TickEventLoop} bypass the estimator and are not counted in tick count and latency.
+ */
+public class EstimatorMetrics implements EstimatorMetricsMBean {
+
+    private final LatencyHistogram tickLatency = new LatencyHistogram();
+    private final LatencyHistogram estimateLatency = new LatencyHistogram();
+    private final LatencyHistogram solveTime = new LatencyHistogram();
+    private final AtomicLong rejectedTasks = new AtomicLong();
+
+    private final SpreadIntensityCurve sellExecutionIntensity;
+    private final SpreadIntensityCurve buyExecutionIntensity;
+    private final ExecutorService executor; // global EstimationExecutor if null
+    private final ObjectName objectName;
+
+    // last sample of fill rate
+    private long sampleNanos;
+    private long sampleFills;
+    private double fillsPerSecond = 0;
+
+
+    EstimatorMetrics(String name, SpreadIntensityCurve sellExecutionIntensity, SpreadIntensityCurve buyExecutionIntensity,
+                     ExecutorService executor) {
+        this.sellExecutionIntensity = sellExecutionIntensity;
+        this.buyExecutionIntensity = buyExecutionIntensity;
+        this.executor = executor;
+        this.sampleNanos = System.nanoTime();
+        try {
+            this.objectName = new ObjectName("org.github.im1235.eie:type=IntensityEstimator,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, this.objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("metrics " + name + " can not be registered", e);
+        }
+    }
+
+
+    /**
+     * Removes MBean from platform MBean server, metrics are still recorded
+     */
+    public void unregister() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(this.objectName)) {
+                server.unregisterMBean(this.objectName);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("metrics can not be unregistered", e);
+        }
+    }
+
+    /**
+     * @return name of MBean
+     */
+    public ObjectName getObjectName() {
+        return this.objectName;
+    }
+
+
+    /**
+     * @param nanos latency of each of n ticks
+     * @param n     number of ticks
+     */
+    void onTicks(long nanos, int n) {
+        this.tickLatency.record(nanos, n);
+    }
+
+    void onEstimate(long nanos) {
+        this.estimateLatency.record(nanos);
+    }
+
+    /**
+     * @param nanos time spent in A and k solver
+     */
+    public void onSolve(long nanos) {
+        this.solveTime.record(nanos);
+    }
+
+    /**
+     * Task has been rejected by executor
+     */
+    public void onRejected() {
+        this.rejectedTasks.incrementAndGet();
+    }
+
+
+    @Override
+    public long getTickCount() {
+        return this.tickLatency.getCount();
+    }
+
+    @Override
+    public double getTickLatencyMeanNanos() {
+        return this.tickLatency.getMeanNanos();
+    }
+
+    @Override
+    public long getTickLatencyP50Nanos() {
+        return this.tickLatency.getQuantileNanos(0.5);
+    }
+
+    @Override
+    public long getTickLatencyP99Nanos() {
+        return this.tickLatency.getQuantileNanos(0.99);
+    }
+
+    @Override
+    public long getTickLatencyMaxNanos() {
+        return this.tickLatency.getMaxNanos();
+    }
+
+    @Override
+    public long[] getTickLatencyHistogram() {
+        return this.tickLatency.getBuckets();
+    }
+
+    @Override
+    public long getEstimateCount() {
+        return this.estimateLatency.getCount();
+    }
+
+    @Override
+    public double getEstimateLatencyMeanNanos() {
+        return this.estimateLatency.getMeanNanos();
+    }
+
+    @Override
+    public long getEstimateLatencyP50Nanos() {
+        return this.estimateLatency.getQuantileNanos(0.5);
+    }
+
+    @Override
+    public long getEstimateLatencyP99Nanos() {
+        return this.estimateLatency.getQuantileNanos(0.99);
+    }
+
+    @Override
+    public long getEstimateLatencyMaxNanos() {
+        return this.estimateLatency.getMaxNanos();
+    }
+
+    @Override
+    public long[] getEstimateLatencyHistogram() {
+        return this.estimateLatency.getBuckets();
+    }
+
+    @Override
+    public long getSolveCount() {
+        return this.solveTime.getCount();
+    }
+
+    @Override
+    public long getSolveTimeTotalNanos() {
+        return this.solveTime.getTotalNanos();
+    }
+
+    @Override
+    public double getSolveTimeMeanNanos() {
+        return this.solveTime.getMeanNanos();
+    }
+
+    @Override
+    public int[] getSellLiveTrackerCounts() {
+        return this.sellExecutionIntensity.getLiveTrackerCounts();
+    }
+
+    @Override
+    public int[] getBuyLiveTrackerCounts() {
+        return this.buyExecutionIntensity.getLiveTrackerCounts();
+    }
+
+    @Override
+    public double[] getSellFinishedTrackerCounts() {
+        return this.sellExecutionIntensity.getFinishedTrackerCounts();
+    }
+
+    @Override
+    public double[] getBuyFinishedTrackerCounts() {
+        return this.buyExecutionIntensity.getFinishedTrackerCounts();
+    }
+
+    @Override
+    public long getFillCount() {
+        return this.sellExecutionIntensity.getFillCount() + this.buyExecutionIntensity.getFillCount();
+    }
+
+    /**
+     * @return number of ticks of both curves that skipped the tracker scan, see {@link #getTickCount} for hit rate
+     */
+    @Override
+    public long getSkippedScanCount() {
+        return this.sellExecutionIntensity.getSkippedScanCount() + this.buyExecutionIntensity.getSkippedScanCount();
+    }
+
+    /**
+     * @return fills per second between the last two samples, sample is taken once per second at most
+     */
+    @Override
+    public synchronized double getFillsPerSecond() {
+        long now = System.nanoTime();
+        if (now - this.sampleNanos >= 1_000_000_000L) {
+            long fills = getFillCount();
+            this.fillsPerSecond = (fills - this.sampleFills) * 1e9 / (now - this.sampleNanos);
+            this.sampleFills = fills;
+            this.sampleNanos = now;
+        }
+        return this.fillsPerSecond;
+    }
+
+    /**
+     * @return number of queued tasks of ThreadPoolExecutor or ForkJoinPool, -1 for other executors
+     */
+    @Override
+    public long getExecutorQueueDepth() {
+        ExecutorService e = this.executor != null ? this.executor : EstimationExecutor.getExecutor();
+        if (e instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) e).getQueue().size();
+        }
+        if (e instanceof ForkJoinPool) {
+            ForkJoinPool pool = (ForkJoinPool) e;
+            return pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount();
+        }
+        return -1;
+    }
+
+    @Override
+    public long getRejectedTaskCount() {
+        return this.rejectedTasks.get();
+    }
+
+}
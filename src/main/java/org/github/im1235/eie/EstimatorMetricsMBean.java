@@ -0,0 +1,56 @@
+package org.github.im1235.eie;
+
+/**
+ * JMX interface of {@link EstimatorMetrics}
+ */
+public interface EstimatorMetricsMBean {
+
+    long getTickCount();
+
+    double getTickLatencyMeanNanos();
+
+    long getTickLatencyP50Nanos();
+
+    long getTickLatencyP99Nanos();
+
+    long getTickLatencyMaxNanos();
+
+    long[] getTickLatencyHistogram();
+
+    long getEstimateCount();
+
+    double getEstimateLatencyMeanNanos();
+
+    long getEstimateLatencyP50Nanos();
+
+    long getEstimateLatencyP99Nanos();
+
+    long getEstimateLatencyMaxNanos();
+
+    long[] getEstimateLatencyHistogram();
+
+    long getSolveCount();
+
+    long getSolveTimeTotalNanos();
+
+    double getSolveTimeMeanNanos();
+
+    int[] getSellLiveTrackerCounts();
+
+    int[] getBuyLiveTrackerCounts();
+
+    double[] getSellFinishedTrackerCounts();
+
+    double[] getBuyFinishedTrackerCounts();
+
+    long getFillCount();
+
+    double getFillsPerSecond();
+
+    long getSkippedScanCount();
+
+    long getExecutorQueueDepth();
+
+    long getRejectedTaskCount();
+
+}
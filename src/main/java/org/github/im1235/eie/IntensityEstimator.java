@@ -2,14 +2,36 @@ package org.github.im1235.eie;
 
 import org.github.im1235.eie.calibration.AkSolverFactory;
 import org.github.im1235.eie.calibration.SpreadIntensityCurve;
+import org.github.im1235.eie.calibration.WindowType;
+import org.github.im1235.eie.events.EstimateComputedEvent;
+import org.github.im1235.eie.events.TickProcessedEvent;
 
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Estimates buy/sell limit order execution intensities , calibrates A and k parameters
+ * <p>
+ * Every estimate is published as immutable {@link IntensityInfo} snapshot, readers get the most recent one
+ * with {@link #latest} without taking the estimator lock. With {@link #setPublishOnTick} enabled
+ * the thread passing ticks also runs the estimate once estimator is initialized.
+ * <p>
+ * Ticks and estimates are recorded as Java Flight Recorder events {@link TickProcessedEvent} and
+ * {@link EstimateComputedEvent} when they take longer than event threshold.
  */
 public class IntensityEstimator {
 
+    private static final long CHECKPOINT_MAGIC = 0x31544B4345494945L; // "EIECKPT1" in little endian
+
     private final SpreadIntensityCurve sellExecutionIntensity;
     private final SpreadIntensityCurve buyExecutionIntensity;
 
@@ -18,6 +40,21 @@ public class IntensityEstimator {
     private boolean isInitialized = false;
     private final long w;
 
+    private final ExecutorService executor; // runs async tasks, global EstimationExecutor if null
+
+    private boolean publishOnTick;
+    private volatile IntensityInfo latest = null;
+
+    private final EstimatorMetrics metrics; // null if metrics are disabled
+    private final String instrument; // instrument of flight recorder events
+
+    // buffers of estimate, guarded by estimator lock
+    private final double[] buyAk = new double[2];
+    private final double[] sellAk = new double[2];
+    private final MutableIntensityInfo estimate = new MutableIntensityInfo();
+    private final EstimateComputedEvent estimateEvent = new EstimateComputedEvent(); // reused, allocation is not always eliminated
+    private final TickProcessedEvent tickEvent = new TickProcessedEvent(); // reused like estimateEvent
+
 
     /**
      * @param spreadStep    smallest spread used in estimates, must be greater than or equal to tick size
@@ -27,9 +64,168 @@ public class IntensityEstimator {
      * @param solverFactory
      */
     public IntensityEstimator(double spreadStep, int nSpreads, long w, long dt, AkSolverFactory solverFactory) {
-        this.w = w;
-        this.sellExecutionIntensity = new SpreadIntensityCurve(spreadStep, nSpreads, dt, solverFactory);
-        this.buyExecutionIntensity = new SpreadIntensityCurve(-spreadStep, nSpreads, dt, solverFactory);
+        this(new Builder(spreadStep, nSpreads, w, dt, solverFactory));
+    }
+
+    private IntensityEstimator(Builder builder) {
+        this(builder, builder.trackerOrigin);
+    }
+
+    private IntensityEstimator(Builder builder, Long trackerOrigin) {
+        this.w = builder.w;
+        this.executor = builder.executor;
+        this.publishOnTick = builder.publishOnTick;
+        this.instrument = builder.instrument != null ? builder.instrument : builder.metricsName;
+        this.sellExecutionIntensity = new SpreadIntensityCurve(builder.spreadStep, builder.nSpreads, builder.dt,
+                builder.solverFactory, builder.executor, builder.windowType, builder.w, builder.tickSize);
+        this.buyExecutionIntensity = new SpreadIntensityCurve(-builder.spreadStep, builder.nSpreads, builder.dt,
+                builder.solverFactory, builder.executor, builder.windowType, builder.w, builder.tickSize);
+        if (trackerOrigin != null) {
+            this.sellExecutionIntensity.alignTrackers(trackerOrigin);
+            this.buyExecutionIntensity.alignTrackers(trackerOrigin);
+        }
+        if (builder.metricsName != null) {
+            this.metrics = new EstimatorMetrics(builder.metricsName, this.sellExecutionIntensity, this.buyExecutionIntensity,
+                    builder.executor);
+            this.sellExecutionIntensity.setMetrics(this.metrics);
+            this.buyExecutionIntensity.setMetrics(this.metrics);
+        } else {
+            this.metrics = null;
+        }
+    }
+
+
+    /**
+     * Builder of estimators with optional configuration
+     */
+    public static class Builder {
+        private final double spreadStep;
+        private final int nSpreads;
+        private final long w;
+        private final long dt;
+        private final AkSolverFactory solverFactory;
+        private ExecutorService executor = null;
+        private boolean publishOnTick = false;
+        private Long trackerOrigin = null;
+        private WindowType windowType = WindowType.SLIDING;
+        private String metricsName = null;
+        private String instrument = null;
+        private double tickSize = 0;
+
+        /**
+         * @param spreadStep    smallest spread used in estimates, must be greater than or equal to tick size
+         * @param nSpreads      number of spreads to test, spreads are multiples of (0,1,..nSpreads-1) * +/-spreadStep
+         * @param w             sliding window width in time units
+         * @param dt            time scaling quant in time units
+         * @param solverFactory
+         */
+        public Builder(double spreadStep, int nSpreads, long w, long dt, AkSolverFactory solverFactory) {
+            this.spreadStep = spreadStep;
+            this.nSpreads = nSpreads;
+            this.w = w;
+            this.dt = dt;
+            this.solverFactory = solverFactory;
+        }
+
+        /**
+         * @param executor executor of async tasks scoped to the estimator, global {@link EstimationExecutor} is used
+         *                 if not set. See {@link EstimationExecutor#workStealing}, {@link EstimationExecutor#virtualThreadPerTask}
+         *                 and {@link EstimationExecutor#callerRuns}
+         * @return this builder
+         */
+        public Builder executor(ExecutorService executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * @param publishOnTick see {@link IntensityEstimator#setPublishOnTick}
+         * @return this builder
+         */
+        public Builder publishOnTick(boolean publishOnTick) {
+            this.publishOnTick = publishOnTick;
+            return this;
+        }
+
+        /**
+         * Aligns tracker insertion times to trackerOrigin + k * dt, by default trackers are inserted every dt
+         * from the first tick. Estimators started at different ticks of the same history produce identical
+         * estimates once their windows are covered by ticks, see {@link CalibrationBackfill}
+         *
+         * @param trackerOrigin tracker time origin, typically time stamp of the first tick of the history
+         * @return this builder
+         */
+        public Builder trackerOrigin(long trackerOrigin) {
+            this.trackerOrigin = trackerOrigin;
+            return this;
+        }
+
+        /**
+         * @param windowType {@link WindowType#SLIDING} window of width w (default) or {@link WindowType#EXPONENTIAL_DECAY}
+         *                   of fills and waiting times with half-life w
+         * @return this builder
+         */
+        public Builder windowType(WindowType windowType) {
+            this.windowType = windowType;
+            return this;
+        }
+
+        /**
+         * Enables {@link EstimatorMetrics} registered as MBean org.github.im1235.eie:type=IntensityEstimator,name=[name]
+         * Metrics are disabled by default
+         *
+         * @param name unique name of the estimator, e.g. instrument
+         * @return this builder
+         */
+        public Builder metrics(String name) {
+            this.metricsName = name;
+            return this;
+        }
+
+        /**
+         * @param instrument instrument recorded in flight recorder events, defaults to metrics name
+         * @return this builder
+         */
+        public Builder instrument(String instrument) {
+            this.instrument = instrument;
+            return this;
+        }
+
+        /**
+         * Stores prices of trackers as fixed point half ticks, fills are decided by integer compares without rounding
+         * errors at tick boundaries. Prices passed to {@link IntensityEstimator#onTick} are rounded to half ticks,
+         * see also {@link IntensityEstimator#onTickInTicks}
+         *
+         * @param tickSize tick size, spreadStep must be multiple of half tick
+         * @return this builder
+         */
+        public Builder tickSize(double tickSize) {
+            this.tickSize = tickSize;
+            return this;
+        }
+
+        long getW() {
+            return this.w;
+        }
+
+        long getDt() {
+            return this.dt;
+        }
+
+        WindowType getWindowType() {
+            return this.windowType;
+        }
+
+        public IntensityEstimator build() {
+            return new IntensityEstimator(this);
+        }
+
+        /**
+         * Builds estimator with trackers aligned to trackerOrigin, tracker origin of this builder is ignored
+         */
+        IntensityEstimator build(long trackerOrigin) {
+            return new IntensityEstimator(this, trackerOrigin);
+        }
     }
 
 
@@ -40,6 +236,8 @@ public class IntensityEstimator {
      * @return true once estimator has been initialized with sufficient data
      */
     public synchronized boolean onTick(double bid, double ask, long ts) {
+        long start = this.metrics != null ? System.nanoTime() : 0;
+        TickProcessedEvent event = beginTickEvent(this.tickEvent);
         if (this.isInitializing) {
             init(ts);
         }
@@ -47,6 +245,73 @@ public class IntensityEstimator {
         long windowStart = ts - this.w;
         this.sellExecutionIntensity.onTick(midPrice, bid, ts, windowStart);
         this.buyExecutionIntensity.onTick(midPrice, ask, ts, windowStart);
+        commitTickEvent(event, 1);
+        if (this.metrics != null) {
+            this.metrics.onTicks(System.nanoTime() - start, 1);
+        }
+        if (this.publishOnTick && this.isInitialized) {
+            estimate(ts);
+        }
+        return this.isInitialized;
+    }
+
+
+    /**
+     * Fixed point implementation of {@link #onTick}, estimator must be built with {@link Builder#tickSize}
+     *
+     * @param bidTicks best market bid price in ticks
+     * @param askTicks best market ask price in ticks
+     * @param ts       time stamp
+     * @return true once estimator has been initialized with sufficient data
+     */
+    public synchronized boolean onTickInTicks(long bidTicks, long askTicks, long ts) {
+        long start = this.metrics != null ? System.nanoTime() : 0;
+        TickProcessedEvent event = beginTickEvent(this.tickEvent);
+        if (this.isInitializing) {
+            init(ts);
+        }
+        long midHalfTicks = bidTicks + askTicks;
+        long windowStart = ts - this.w;
+        this.sellExecutionIntensity.onTickHalfTicks(midHalfTicks, 2 * bidTicks, ts, windowStart);
+        this.buyExecutionIntensity.onTickHalfTicks(midHalfTicks, 2 * askTicks, ts, windowStart);
+        commitTickEvent(event, 1);
+        if (this.metrics != null) {
+            this.metrics.onTicks(System.nanoTime() - start, 1);
+        }
+        if (this.publishOnTick && this.isInitialized) {
+            estimate(ts);
+        }
+        return this.isInitialized;
+    }
+
+
+    /**
+     * Batch implementation of {@link #onTick}, produces same state as calling onTick for each tick
+     * Processes ticks from index from (inclusive) to index to (exclusive) under single lock
+     *
+     * @param bids best market bid prices
+     * @param asks best market ask prices
+     * @param ts   time stamps
+     * @param from index of first tick
+     * @param to   index after last tick
+     * @return true once estimator has been initialized with sufficient data
+     */
+    public synchronized boolean onTicks(double[] bids, double[] asks, long[] ts, int from, int to) {
+        long start = this.metrics != null ? System.nanoTime() : 0;
+        TickProcessedEvent event = beginTickEvent(this.tickEvent);
+        for (int i = from; i < to && this.isInitializing; i++) {
+            init(ts[i]);
+        }
+        this.sellExecutionIntensity.onTicks(bids, asks, ts, from, to, this.w);
+        this.buyExecutionIntensity.onTicks(bids, asks, ts, from, to, this.w);
+        commitTickEvent(event, to - from);
+        if (this.metrics != null && from < to) {
+            // batch is recorded as to - from ticks of mean latency
+            this.metrics.onTicks((System.nanoTime() - start) / (to - from), to - from);
+        }
+        if (this.publishOnTick && this.isInitialized && from < to) {
+            estimate(ts[to - 1]);
+        }
         return this.isInitialized;
     }
 
@@ -58,9 +323,14 @@ public class IntensityEstimator {
      * @param ask
      * @param ts
      * @return
+     * @deprecated submits estimator and curve tasks for every tick and blocks on both curves,
+     * use {@link TickEventLoop} that drains ticks in batches by long lived consumer threads
      */
+    @Deprecated
     public synchronized Future<Boolean> onTickAsync(double bid, double ask, long ts) {
-        return EstimationExecutor.submit(() -> {
+        return submit(() -> {
+            long start = this.metrics != null ? System.nanoTime() : 0;
+            TickProcessedEvent event = beginTickEvent(new TickProcessedEvent());
             if (this.isInitializing) {
                 init(ts);
             }
@@ -70,11 +340,51 @@ public class IntensityEstimator {
             Future<Void> buyResult = this.buyExecutionIntensity.onTickAsync(midPrice, ask, ts, windowStart);
             sellResult.get();
             buyResult.get();
+            commitTickEvent(event, 1);
+            if (this.metrics != null) {
+                this.metrics.onTicks(System.nanoTime() - start, 1);
+            }
+            if (this.publishOnTick && this.isInitialized) {
+                estimate(ts);
+            }
             return this.isInitialized;
         });
     }
 
 
+    /**
+     * Initialization step for tick that is passed to curves outside of onTick (by {@link TickEventLoop})
+     *
+     * @param ts time stamp
+     * @return true once estimator has been initialized with sufficient data
+     */
+    synchronized boolean initOnTick(long ts) {
+        if (this.isInitializing) {
+            init(ts);
+        }
+        return this.isInitialized;
+    }
+
+    /**
+     * @return time stamp at which estimator is initialized, null before the first tick
+     */
+    synchronized Long getInitDoneTs() {
+        return this.initDoneTS;
+    }
+
+    SpreadIntensityCurve getSellExecutionIntensity() {
+        return this.sellExecutionIntensity;
+    }
+
+    SpreadIntensityCurve getBuyExecutionIntensity() {
+        return this.buyExecutionIntensity;
+    }
+
+    long getW() {
+        return this.w;
+    }
+
+
     /**
      * Sets estimator to initialized once w time has elapsed
      *
@@ -92,16 +402,42 @@ public class IntensityEstimator {
     }
 
     /**
-     * performs estimation of all parameters
+     * performs estimation of all parameters, publishes result as {@link #latest}
      *
      * @param ts
      */
     public synchronized IntensityInfo estimate(long ts) {
+        estimateInto(this.estimate, ts);
+        IntensityInfo intensityInfo = this.estimate.toIntensityInfo();
+        this.latest = intensityInfo;
+        return intensityInfo;
+    }
+
+
+    /**
+     * Garbage free implementation of {@link #estimate}, result is written into caller owned holder
+     * Result is not published as {@link #latest}, publishing requires immutable snapshot
+     *
+     * @param out holder of estimated A and k
+     * @param ts  time stamp
+     * @return out
+     */
+    public synchronized MutableIntensityInfo estimateInto(MutableIntensityInfo out, long ts) {
+        long start = this.metrics != null ? System.nanoTime() : 0;
+        EstimateComputedEvent event = this.estimateEvent;
+        event.begin();
         long windowStart = ts - this.w;
-        return new IntensityInfo(
-                this.buyExecutionIntensity.estimateAk(ts, windowStart),
-                this.sellExecutionIntensity.estimateAk(ts, windowStart)
-        );
+        this.buyExecutionIntensity.estimateAk(ts, windowStart, this.buyAk);
+        this.sellExecutionIntensity.estimateAk(ts, windowStart, this.sellAk);
+        out.buyA = this.buyAk[0];
+        out.buyK = this.buyAk[1];
+        out.sellA = this.sellAk[0];
+        out.sellK = this.sellAk[1];
+        commitEstimateEvent(event, out.buyA, out.buyK, out.sellA, out.sellK);
+        if (this.metrics != null) {
+            this.metrics.onEstimate(System.nanoTime() - start);
+        }
+        return out;
     }
 
     /**
@@ -110,12 +446,171 @@ public class IntensityEstimator {
      * @param ts
      */
     public synchronized Future<IntensityInfo> estimateAsync(long ts) {
-        return EstimationExecutor.submit(() -> {
+        return submit(() -> {
+            long start = this.metrics != null ? System.nanoTime() : 0;
+            EstimateComputedEvent event = new EstimateComputedEvent();
+            event.begin();
             long windowStart = ts - this.w;
             Future<double[]> sellEstResult = this.sellExecutionIntensity.estimateAkAsync(ts, windowStart);
             Future<double[]> buyEstResult = this.buyExecutionIntensity.estimateAkAsync(ts, windowStart);
-            return new IntensityInfo(buyEstResult.get(), sellEstResult.get());
+            IntensityInfo intensityInfo = new IntensityInfo(buyEstResult.get(), sellEstResult.get());
+            this.latest = intensityInfo;
+            commitEstimateEvent(event, intensityInfo.buyA, intensityInfo.buyK, intensityInfo.sellA, intensityInfo.sellK);
+            if (this.metrics != null) {
+                this.metrics.onEstimate(System.nanoTime() - start);
+            }
+            return intensityInfo;
         });
     }
 
+
+    /**
+     * Begins tick event, counters of curves are read only if event is enabled
+     *
+     * @param event {@link #tickEvent} under estimator lock, new event on async path
+     */
+    private TickProcessedEvent beginTickEvent(TickProcessedEvent event) {
+        if (event.isEnabled()) {
+            event.begin();
+            // counters before the ticks, replaced by difference on commit
+            event.trackersScanned = this.sellExecutionIntensity.getScanCount() + this.buyExecutionIntensity.getScanCount();
+            event.fills = this.sellExecutionIntensity.getFillCount() + this.buyExecutionIntensity.getFillCount();
+        }
+        return event;
+    }
+
+    private void commitTickEvent(TickProcessedEvent event, int ticks) {
+        if (event.isEnabled()) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.instrument = this.instrument;
+                event.ticks = ticks;
+                event.trackersScanned = this.sellExecutionIntensity.getScanCount() + this.buyExecutionIntensity.getScanCount()
+                        - event.trackersScanned;
+                event.fills = this.sellExecutionIntensity.getFillCount() + this.buyExecutionIntensity.getFillCount() - event.fills;
+                event.commit();
+            }
+        }
+    }
+
+    private void commitEstimateEvent(EstimateComputedEvent event, double buyA, double buyK, double sellA, double sellK) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.instrument = this.instrument;
+            event.buyA = buyA;
+            event.buyK = buyK;
+            event.sellA = sellA;
+            event.sellK = sellK;
+            event.commit();
+        }
+    }
+
+
+    private <T> Future<T> submit(Callable<T> task) {
+        try {
+            return EstimationExecutor.submit(this.executor, task);
+        } catch (RejectedExecutionException e) {
+            if (this.metrics != null) {
+                this.metrics.onRejected();
+            }
+            throw e;
+        }
+    }
+
+
+    /**
+     * Writes complete state to binary file: initialization flags, latest estimate and trackers, fills and waiting times
+     * of both curves. With {@link TickEventLoop} call after {@link TickEventLoop#awaitProcessed}.
+     *
+     * @param file created or truncated checkpoint file
+     * @throws IOException
+     */
+    public synchronized void checkpoint(Path file) throws IOException {
+        int size = 8 + 8 + 1 + 8 + 2 + 1 + 4 * 8
+                + this.sellExecutionIntensity.stateSize() + this.buyExecutionIntensity.stateSize();
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putLong(CHECKPOINT_MAGIC).putLong(this.w)
+                .put((byte) (this.initDoneTS != null ? 1 : 0)).putLong(this.initDoneTS != null ? this.initDoneTS : 0)
+                .put((byte) (this.isInitializing ? 1 : 0)).put((byte) (this.isInitialized ? 1 : 0));
+        IntensityInfo latest = this.latest;
+        buffer.put((byte) (latest != null ? 1 : 0));
+        buffer.putDouble(latest != null ? latest.buyA : 0).putDouble(latest != null ? latest.buyK : 0)
+                .putDouble(latest != null ? latest.sellA : 0).putDouble(latest != null ? latest.sellK : 0);
+        this.sellExecutionIntensity.writeState(buffer);
+        this.buyExecutionIntensity.writeState(buffer);
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+
+    /**
+     * Replaces state with state written by {@link #checkpoint}, file is memory mapped.
+     * Estimator continues as if it had processed the ticks of the checkpointed estimator,
+     * so it is initialized immediately if the checkpointed one was. If restore fails state of estimator is unchanged.
+     *
+     * @param file checkpoint file
+     * @throws IOException              if file is not checkpoint file
+     * @throws IllegalArgumentException if checkpoint was written by estimator with different configuration
+     */
+    public synchronized void restore(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.remaining() < 16 || buffer.getLong() != CHECKPOINT_MAGIC) {
+                throw new IOException(file + " is not checkpoint file");
+            }
+            if (buffer.getLong() != this.w) {
+                throw new IllegalArgumentException("checkpoint was written by estimator with different window");
+            }
+            boolean hasInitDoneTS = buffer.get() != 0;
+            long initDoneTS = buffer.getLong();
+            boolean isInitializing = buffer.get() != 0;
+            boolean isInitialized = buffer.get() != 0;
+            boolean hasLatest = buffer.get() != 0;
+            IntensityInfo latest = new IntensityInfo(buffer.getDouble(), buffer.getDouble(), buffer.getDouble(), buffer.getDouble());
+            // both curves are read before anything is replaced, rejected checkpoint leaves estimator unchanged
+            SpreadIntensityCurve.CurveState sellState = this.sellExecutionIntensity.readState(buffer);
+            SpreadIntensityCurve.CurveState buyState = this.buyExecutionIntensity.readState(buffer);
+            this.sellExecutionIntensity.restoreState(sellState);
+            this.buyExecutionIntensity.restoreState(buyState);
+            this.initDoneTS = hasInitDoneTS ? initDoneTS : null;
+            this.isInitializing = isInitializing;
+            this.isInitialized = isInitialized;
+            this.latest = hasLatest ? latest : null;
+        } catch (BufferUnderflowException e) {
+            throw new IOException(file + " is truncated", e);
+        }
+    }
+
+
+    /**
+     * Wait free read of the most recent estimate, does not take estimator lock
+     *
+     * @return last published estimate of A and k, null if nothing has been estimated yet
+     */
+    public IntensityInfo latest() {
+        return this.latest;
+    }
+
+
+    /**
+     * @return metrics of the estimator, null if metrics are disabled, see {@link Builder#metrics}
+     */
+    public EstimatorMetrics metrics() {
+        return this.metrics;
+    }
+
+
+    /**
+     * @param publishOnTick if true, onTick/onTicks/onTickAsync estimate and publish A and k
+     *                      once estimator is initialized
+     */
+    public synchronized void setPublishOnTick(boolean publishOnTick) {
+        this.publishOnTick = publishOnTick;
+    }
+
 }
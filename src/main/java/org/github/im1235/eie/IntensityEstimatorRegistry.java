@@ -0,0 +1,326 @@
+package org.github.im1235.eie;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Registry of intensity estimators for many instruments
+ * <p>
+ * Each instrument is pinned to one of nShards single threaded shards. Ticks are queued without locking into bounded
+ * primitive ring buffer of the shard and processed in batches by the shard thread, so estimator of an instrument is only
+ * ever touched by one thread and no task is submitted per tick.
+ * After each batch shard estimates A and k of instruments that received ticks, result is published by
+ * the estimator and returned by {@link #latest} without blocking.
+ * If a shard thread fails, its exception is rethrown by {@link #onTick}, {@link #awaitIdle} and {@link #close}.
+ */
+public class IntensityEstimatorRegistry implements AutoCloseable {
+
+    /**
+     * Registered instrument, estimator is accessed only by shard thread
+     */
+    private static class Instrument {
+        final long instrumentId;
+        final IntensityEstimator estimator;
+        final Shard shard;
+        // shard thread state
+        boolean dirty = false;
+        long lastTs;
+
+        Instrument(long instrumentId, IntensityEstimator estimator, Shard shard) {
+            this.instrumentId = instrumentId;
+            this.estimator = estimator;
+            this.shard = shard;
+        }
+    }
+
+
+    /**
+     * Single consumer thread with multi producer ring buffer of ticks
+     * Producers claim sequences with CAS on tail and publish each slot by its sequence, no lock is taken
+     */
+    private static class Shard implements Runnable {
+        private static final int SPIN_TRIES = 1000;
+
+        private final Instrument[] instruments;
+        private final double[] bids;
+        private final double[] asks;
+        private final long[] timeStamps;
+        private final int mask;
+        private final long parkNanos;
+        private final Thread thread;
+
+        private final AtomicLong tail = new AtomicLong(); // next sequence to be claimed by producer
+        private final AtomicLongArray published; // sequence last written to slot, slot is visible once it equals sequence
+        private volatile long consumed = 0; // sequences below are processed and published
+        private volatile boolean running = true;
+        private volatile Throwable failure = null; // exception that stopped shard thread
+
+        private Instrument[] dirty = new Instrument[16];
+        private int dirtyCount = 0;
+
+        Shard(int shardIdx, int capacity, long parkNanos) {
+            this.instruments = new Instrument[capacity];
+            this.bids = new double[capacity];
+            this.asks = new double[capacity];
+            this.timeStamps = new long[capacity];
+            this.published = new AtomicLongArray(capacity);
+            for (int i = 0; i < capacity; i++) {
+                this.published.set(i, -1);
+            }
+            this.mask = capacity - 1;
+            this.parkNanos = parkNanos;
+            this.thread = new Thread(this, "intensity-estimator-shard-" + shardIdx);
+            this.thread.setDaemon(true);
+        }
+
+        void offer(Instrument instrument, double bid, double ask, long ts) {
+            checkFailure();
+            long sequence = this.tail.getAndIncrement();
+            // wait until consumer releases slot
+            while (sequence - this.consumed > this.mask) {
+                checkFailure();
+                Thread.yield();
+            }
+            int idx = (int) sequence & this.mask;
+            this.instruments[idx] = instrument;
+            this.bids[idx] = bid;
+            this.asks[idx] = ask;
+            this.timeStamps[idx] = ts;
+            this.published.lazySet(idx, sequence);
+        }
+
+        @Override
+        public void run() {
+            try {
+                consume();
+            } catch (Throwable t) {
+                this.failure = t;
+            }
+        }
+
+        private void consume() {
+            int idle = 0;
+            while (this.running || this.consumed != this.tail.get()) {
+                long next = this.consumed;
+                // producers may publish out of order, batch ends at the first slot that is not written yet
+                long available = next;
+                while (available - next <= this.mask && this.published.get((int) available & this.mask) == available) {
+                    available++;
+                }
+                if (next == available) {
+                    if (++idle < SPIN_TRIES) {
+                        Thread.onSpinWait();
+                    } else {
+                        LockSupport.parkNanos(this.parkNanos);
+                    }
+                    continue;
+                }
+                idle = 0;
+                for (; next < available; next++) {
+                    int idx = (int) next & this.mask;
+                    Instrument instrument = this.instruments[idx];
+                    long ts = this.timeStamps[idx];
+                    boolean initialized = instrument.estimator.onTick(this.bids[idx], this.asks[idx], ts);
+                    instrument.lastTs = ts;
+                    if (initialized && !instrument.dirty) {
+                        markDirty(instrument);
+                    }
+                }
+                // estimate once per batch for each instrument that received ticks
+                for (int i = 0; i < this.dirtyCount; i++) {
+                    Instrument instrument = this.dirty[i];
+                    instrument.estimator.estimate(instrument.lastTs);
+                    instrument.dirty = false;
+                    this.dirty[i] = null;
+                }
+                this.dirtyCount = 0;
+                this.consumed = available;
+            }
+        }
+
+        private void markDirty(Instrument instrument) {
+            if (this.dirtyCount == this.dirty.length) {
+                Instrument[] grown = new Instrument[this.dirty.length * 2];
+                System.arraycopy(this.dirty, 0, grown, 0, this.dirtyCount);
+                this.dirty = grown;
+            }
+            instrument.dirty = true;
+            this.dirty[this.dirtyCount++] = instrument;
+        }
+
+        boolean isIdle() {
+            return this.consumed == this.tail.get();
+        }
+
+        void checkFailure() {
+            Throwable failure = this.failure;
+            if (failure != null) {
+                throw new IllegalStateException(this.thread.getName() + " failed", failure);
+            }
+        }
+    }
+
+
+    private final Shard[] shards;
+    /**
+     * open addressing hash table instrumentId -> Instrument, replaced on registration so lookups are lock free
+     */
+    private volatile Instrument[] table = new Instrument[16];
+    private int registered = 0;
+
+
+    /**
+     * @param nShards       number of shard threads
+     * @param queueCapacity capacity of ring buffer of each shard, rounded up to power of 2
+     */
+    public IntensityEstimatorRegistry(int nShards, int queueCapacity) {
+        this(nShards, queueCapacity, TimeUnit.MICROSECONDS.toNanos(50));
+    }
+
+    /**
+     * @param nShards       number of shard threads
+     * @param queueCapacity capacity of ring buffer of each shard, rounded up to power of 2
+     * @param parkNanos     time shard thread parks when there are no ticks to process
+     */
+    public IntensityEstimatorRegistry(int nShards, int queueCapacity, long parkNanos) {
+        if (nShards < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("number of shards and queue capacity must be positive");
+        }
+        int capacity = Integer.highestOneBit(queueCapacity);
+        if (capacity < queueCapacity) {
+            capacity <<= 1;
+        }
+        this.shards = new Shard[nShards];
+        for (int i = 0; i < nShards; i++) {
+            this.shards[i] = new Shard(i, capacity, parkNanos);
+            this.shards[i].thread.start();
+        }
+    }
+
+
+    /**
+     * Registers estimator of the instrument, instrument is pinned to shard by its id
+     *
+     * @param instrumentId instrument id
+     * @param estimator    estimator used only for this instrument
+     */
+    public synchronized void register(long instrumentId, IntensityEstimator estimator) {
+        if (find(this.table, instrumentId) != null) {
+            throw new IllegalArgumentException("instrument " + instrumentId + " is already registered");
+        }
+        Instrument[] t = this.table;
+        if (2 * (this.registered + 1) > t.length) {
+            Instrument[] grown = new Instrument[t.length * 2];
+            for (Instrument instrument : t) {
+                if (instrument != null) {
+                    insert(grown, instrument);
+                }
+            }
+            t = grown;
+        } else {
+            t = t.clone();
+        }
+        insert(t, new Instrument(instrumentId, estimator, this.shards[(int) Math.floorMod(hash(instrumentId), (long) this.shards.length)]));
+        this.registered++;
+        this.table = t;
+    }
+
+
+    /**
+     * Queues tick to shard of the instrument without locking, waits while shard queue is full
+     * Any thread can call, ticks of one instrument are processed in order they are passed
+     *
+     * @param instrumentId instrument id
+     * @param bid          best market bid price
+     * @param ask          best market ask price
+     * @param ts           time stamp
+     * @throws IllegalStateException if shard thread of the instrument has failed
+     */
+    public void onTick(long instrumentId, double bid, double ask, long ts) {
+        Instrument instrument = find(this.table, instrumentId);
+        if (instrument == null) {
+            throw new IllegalArgumentException("instrument " + instrumentId + " is not registered");
+        }
+        instrument.shard.offer(instrument, bid, ask, ts);
+    }
+
+
+    /**
+     * @param instrumentId instrument id
+     * @return latest estimate of A and k, null until estimator of the instrument is initialized
+     */
+    public IntensityInfo latest(long instrumentId) {
+        Instrument instrument = find(this.table, instrumentId);
+        if (instrument == null) {
+            throw new IllegalArgumentException("instrument " + instrumentId + " is not registered");
+        }
+        return instrument.estimator.latest();
+    }
+
+
+    /**
+     * Waits until all queued ticks are processed and estimates are published
+     *
+     * @throws IllegalStateException if shard thread has failed
+     */
+    public void awaitIdle() {
+        for (Shard shard : this.shards) {
+            while (!shard.isIdle()) {
+                shard.checkFailure();
+                Thread.yield();
+            }
+            shard.checkFailure();
+        }
+    }
+
+
+    /**
+     * Processes queued ticks and stops shard threads, returns early if calling thread is interrupted
+     *
+     * @throws IllegalStateException if shard thread has failed
+     */
+    @Override
+    public void close() {
+        for (Shard shard : this.shards) {
+            shard.running = false;
+        }
+        try {
+            for (Shard shard : this.shards) {
+                shard.thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Shard shard : this.shards) {
+            shard.checkFailure();
+        }
+    }
+
+
+    private static long hash(long instrumentId) {
+        long h = instrumentId * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    private static Instrument find(Instrument[] t, long instrumentId) {
+        int mask = t.length - 1;
+        for (int i = (int) hash(instrumentId) & mask; ; i = (i + 1) & mask) {
+            Instrument instrument = t[i];
+            if (instrument == null || instrument.instrumentId == instrumentId) {
+                return instrument;
+            }
+        }
+    }
+
+    private static void insert(Instrument[] t, Instrument instrument) {
+        int mask = t.length - 1;
+        int i = (int) hash(instrument.instrumentId) & mask;
+        while (t[i] != null) {
+            i = (i + 1) & mask;
+        }
+        t[i] = instrument;
+    }
+
+}
@@ -0,0 +1,41 @@
+package org.github.im1235.eie;
+
+/**
+ * Series of A and k estimates at regular times startTs + i * dt
+ */
+public class IntensitySeries {
+
+    private final long startTs;
+    private final long dt;
+    private final IntensityInfo[] estimates;
+
+    IntensitySeries(long startTs, long dt, IntensityInfo[] estimates) {
+        this.startTs = startTs;
+        this.dt = dt;
+        this.estimates = estimates;
+    }
+
+    /**
+     * @return number of estimates
+     */
+    public int size() {
+        return this.estimates.length;
+    }
+
+    /**
+     * @param i index of estimate
+     * @return time of estimate
+     */
+    public long getTimeStamp(int i) {
+        return this.startTs + i * this.dt;
+    }
+
+    /**
+     * @param i index of estimate
+     * @return estimate of A and k at {@link #getTimeStamp}
+     */
+    public IntensityInfo get(int i) {
+        return this.estimates[i];
+    }
+
+}
@@ -0,0 +1,87 @@
+package org.github.im1235.eie;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of latencies in power of 2 nanosecond buckets, recording does not allocate
+ * Bucket i holds latencies in [2^(i-1), 2^i - 1] ns, bucket 0 holds 0 ns
+ */
+class LatencyHistogram {
+
+    private static final int N_BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(N_BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param nanos latency
+     */
+    void record(long nanos) {
+        record(nanos, 1);
+    }
+
+    /**
+     * @param nanos latency of each of n events
+     * @param n     number of events
+     */
+    void record(long nanos, long n) {
+        long latency = Math.max(0, nanos);
+        this.buckets.addAndGet(Math.min(N_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(latency)), n);
+        this.count.addAndGet(n);
+        this.sum.addAndGet(latency * n);
+        this.max.accumulateAndGet(latency, Math::max);
+    }
+
+    long getCount() {
+        return this.count.get();
+    }
+
+    long getTotalNanos() {
+        return this.sum.get();
+    }
+
+    double getMeanNanos() {
+        long n = this.count.get();
+        return n > 0 ? (double) this.sum.get() / n : Double.NaN;
+    }
+
+    long getMaxNanos() {
+        return this.max.get();
+    }
+
+    /**
+     * @param quantile quantile in [0, 1]
+     * @return upper bound of bucket that contains quantile, 0 if nothing has been recorded
+     */
+    long getQuantileNanos(double quantile) {
+        long[] counts = getBuckets();
+        long total = 0;
+        for (long c : counts) {
+            total += c;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long cumulative = 0;
+        for (int i = 0; i < N_BUCKETS; i++) {
+            cumulative += counts[i];
+            if (cumulative >= rank && counts[i] > 0) {
+                return Math.min((1L << i) - 1, getMaxNanos());
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return number of latencies in each bucket
+     */
+    long[] getBuckets() {
+        long[] counts = new long[N_BUCKETS];
+        for (int i = 0; i < N_BUCKETS; i++) {
+            counts[i] = this.buckets.get(i);
+        }
+        return counts;
+    }
+
+}
@@ -0,0 +1,41 @@
+package org.github.im1235.eie;
+
+/**
+ * Reusable holder of estimated A and k for buy and sell limit orders, written by {@link IntensityEstimator#estimateInto}
+ * Mutable counterpart of {@link IntensityInfo} for garbage free estimation, not thread safe
+ */
+public class MutableIntensityInfo {
+
+    public double buyA, buyK, sellA, sellK;
+
+    public MutableIntensityInfo() {
+        this.buyA = Double.NaN;
+        this.buyK = Double.NaN;
+        this.sellA = Double.NaN;
+        this.sellK = Double.NaN;
+    }
+
+    public double getSellFillIntensity(double spread) {
+        return IntensityInfo.getIntensity(spread, this.sellA, this.sellK);
+    }
+
+    public double getBuyFillIntensity(double spread) {
+        return IntensityInfo.getIntensity(spread, this.buyA, this.buyK);
+    }
+
+    public double getSellSpread(double intensity) {
+        return IntensityInfo.getSpread(intensity, this.sellA, this.sellK);
+    }
+
+    public double getBuySpread(double intensity) {
+        return IntensityInfo.getSpread(intensity, this.buyA, this.buyK);
+    }
+
+    /**
+     * @return immutable snapshot of current values
+     */
+    public IntensityInfo toIntensityInfo() {
+        return new IntensityInfo(this.buyA, this.buyK, this.sellA, this.sellK);
+    }
+
+}
@@ -0,0 +1,340 @@
+package org.github.im1235.eie;
+
+import org.github.im1235.eie.calibration.AkSolverFactory;
+import org.github.im1235.eie.calibration.SpreadIntensityCurveSet;
+import org.github.im1235.eie.replay.TickConsumer;
+import org.github.im1235.eie.replay.TickReplay;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Calibrates many estimator configurations in single pass over tick history
+ * <p>
+ * Configurations with the same spreadStep, w and dt share tracker state, they differ only in number of spreads and
+ * solver ({@link SpreadIntensityCurveSet}). Ticks are read once in chunks, each chunk is processed by all groups
+ * of configurations in parallel while next chunk is read. Every configuration is estimated at times
+ * origin + k * estimateInterval (origin is time stamp of the first tick) once its first window w is covered,
+ * estimates are identical to estimates of separate {@link IntensityEstimator}s.
+ */
+public class ParameterSweep {
+
+    /**
+     * Estimator configuration, see {@link IntensityEstimator#IntensityEstimator}
+     */
+    public static class Configuration {
+        public final double spreadStep;
+        public final int nSpreads;
+        public final long w;
+        public final long dt;
+        public final AkSolverFactory.SolverType solverType;
+
+        Configuration(double spreadStep, int nSpreads, long w, long dt, AkSolverFactory.SolverType solverType) {
+            this.spreadStep = spreadStep;
+            this.nSpreads = nSpreads;
+            this.w = w;
+            this.dt = dt;
+            this.solverType = solverType;
+        }
+    }
+
+
+    /**
+     * Estimates and timing of single configuration
+     */
+    public static class Result {
+        public final Configuration configuration;
+        public final IntensitySeries estimates;
+        public final long tickNanos; // time spent processing ticks, shared by configurations of the same group
+        public final long estimateNanos; // time spent estimating intensities and solving A and k
+
+        Result(Configuration configuration, IntensitySeries estimates, long tickNanos, long estimateNanos) {
+            this.configuration = configuration;
+            this.estimates = estimates;
+            this.tickNanos = tickNanos;
+            this.estimateNanos = estimateNanos;
+        }
+    }
+
+
+    private final long estimateInterval;
+    private final int chunkSize;
+    private final List<Configuration> configurations = new ArrayList<>();
+
+
+    /**
+     * @param estimateInterval time between estimates in time units
+     * @param chunkSize        number of ticks read at once
+     */
+    public ParameterSweep(long estimateInterval, int chunkSize) {
+        if (estimateInterval < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("estimate interval and chunk size must be positive");
+        }
+        this.estimateInterval = estimateInterval;
+        this.chunkSize = chunkSize;
+    }
+
+
+    /**
+     * @param spreadStep smallest spread used in estimates, must be greater than or equal to tick size
+     * @param nSpreads   number of spreads to test
+     * @param w          sliding window width in time units
+     * @param dt         time scaling quant in time units
+     * @param solverType A and k solver
+     * @return this sweep
+     */
+    public ParameterSweep add(double spreadStep, int nSpreads, long w, long dt, AkSolverFactory.SolverType solverType) {
+        this.configurations.add(new Configuration(spreadStep, nSpreads, w, dt, solverType));
+        return this;
+    }
+
+
+    /**
+     * @param replay   tick history
+     * @param executor processes groups of configurations
+     * @return result of each configuration in order of {@link #add}
+     * @throws IOException
+     * @throws IllegalStateException if processing of ticks fails or is interrupted
+     */
+    public List<Result> run(TickReplay replay, ExecutorService executor) throws IOException {
+        List<Group> groups = new ArrayList<>();
+        Group[] groupOf = new Group[this.configurations.size()];
+        long origin = replay.count() > 0 ? replay.timeStamp(0) : 0;
+        for (int c = 0; c < this.configurations.size(); c++) {
+            Configuration configuration = this.configurations.get(c);
+            for (Group group : groups) {
+                if (group.spreadStep == configuration.spreadStep && group.w == configuration.w && group.dt == configuration.dt) {
+                    groupOf[c] = group;
+                    break;
+                }
+            }
+            if (groupOf[c] == null) {
+                groupOf[c] = new Group(configuration, origin);
+                groups.add(groupOf[c]);
+            }
+            groupOf[c].configurations.add(c);
+        }
+        for (Group group : groups) {
+            group.init();
+        }
+
+        Reader reader = new Reader(groups, executor);
+        replay.replay(reader);
+        reader.flush();
+        reader.await();
+        for (Group group : groups) {
+            group.finish(reader.lastTs);
+        }
+
+        List<Result> results = new ArrayList<>(this.configurations.size());
+        for (int c = 0; c < this.configurations.size(); c++) {
+            results.add(groupOf[c].result(c));
+        }
+        return results;
+    }
+
+
+    /**
+     * @param results results of {@link #run}
+     * @return csv table with configuration, number of estimates, last estimate and timing of each configuration
+     */
+    public static String toTable(List<Result> results) {
+        StringBuilder sb = new StringBuilder("spreadStep,nSpreads,w,dt,solver,estimates,buyA,buyK,sellA,sellK,tickMs,estimateMs\n");
+        for (Result result : results) {
+            Configuration c = result.configuration;
+            int n = result.estimates.size();
+            IntensityInfo last = n > 0 ? result.estimates.get(n - 1) : new IntensityInfo(Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+            sb.append(String.format(Locale.ROOT, "%s,%d,%d,%d,%s,%d,%s,%s,%s,%s,%.3f,%.3f%n",
+                    c.spreadStep, c.nSpreads, c.w, c.dt, c.solverType, n,
+                    last.buyA, last.buyK, last.sellA, last.sellK,
+                    result.tickNanos / 1e6, result.estimateNanos / 1e6));
+        }
+        return sb.toString();
+    }
+
+
+    /**
+     * Configurations sharing tracker state, processes chunks in order
+     */
+    private class Group implements Callable<Void> {
+        private final double spreadStep;
+        private final long w;
+        private final long dt;
+        private final List<Integer> configurations = new ArrayList<>();
+        private long nextTs;
+
+        private SpreadIntensityCurveSet sellExecutionIntensity;
+        private SpreadIntensityCurveSet buyExecutionIntensity;
+        private List<List<IntensityInfo>> estimates;
+        private long[] estimateNanos;
+        private long[] sellSolveNanos;
+        private long[] buySolveNanos;
+        private long tickNanos = 0;
+
+        private Chunk chunk; // chunk to be processed by next call
+
+        Group(Configuration configuration, long origin) {
+            this.spreadStep = configuration.spreadStep;
+            this.w = configuration.w;
+            this.dt = configuration.dt;
+            // first estimate once window is covered
+            this.nextTs = origin + Math.floorDiv(this.w + estimateInterval - 1, estimateInterval) * estimateInterval;
+        }
+
+        void init() {
+            int n = this.configurations.size();
+            int[] nSpreads = new int[n];
+            AkSolverFactory[] solverFactories = new AkSolverFactory[n];
+            this.estimates = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                Configuration configuration = ParameterSweep.this.configurations.get(this.configurations.get(i));
+                nSpreads[i] = configuration.nSpreads;
+                solverFactories[i] = new AkSolverFactory(configuration.solverType);
+                this.estimates.add(new ArrayList<>());
+            }
+            this.sellExecutionIntensity = new SpreadIntensityCurveSet(this.spreadStep, nSpreads, solverFactories, this.dt);
+            this.buyExecutionIntensity = new SpreadIntensityCurveSet(-this.spreadStep, nSpreads, solverFactories, this.dt);
+            this.estimateNanos = new long[n];
+            this.sellSolveNanos = new long[n];
+            this.buySolveNanos = new long[n];
+        }
+
+        @Override
+        public Void call() {
+            Chunk c = this.chunk;
+            int from = 0;
+            for (int i = 0; i < c.size; i++) {
+                if (this.nextTs < c.timeStamps[i]) {
+                    // ticks up to estimate time have to be processed before estimate
+                    onTicks(c, from, i);
+                    from = i;
+                    while (this.nextTs < c.timeStamps[i]) {
+                        estimate();
+                    }
+                }
+            }
+            onTicks(c, from, c.size);
+            return null;
+        }
+
+        void finish(long lastTs) {
+            while (this.nextTs <= lastTs) {
+                estimate();
+            }
+        }
+
+        private void onTicks(Chunk c, int from, int to) {
+            long start = System.nanoTime();
+            this.sellExecutionIntensity.onTicks(c.bids, c.asks, c.timeStamps, from, to, this.w);
+            this.buyExecutionIntensity.onTicks(c.bids, c.asks, c.timeStamps, from, to, this.w);
+            this.tickNanos += System.nanoTime() - start;
+        }
+
+        private void estimate() {
+            long start = System.nanoTime();
+            long windowStart = this.nextTs - this.w;
+            double[][] buyAk = this.buyExecutionIntensity.estimateAk(this.nextTs, windowStart, this.buySolveNanos);
+            double[][] sellAk = this.sellExecutionIntensity.estimateAk(this.nextTs, windowStart, this.sellSolveNanos);
+            long solveNanos = 0;
+            for (int i = 0; i < buyAk.length; i++) {
+                this.estimates.get(i).add(new IntensityInfo(buyAk[i], sellAk[i]));
+                solveNanos += this.buySolveNanos[i] + this.sellSolveNanos[i];
+            }
+            // time of shared intensity estimate is attributed to every configuration
+            long sharedNanos = System.nanoTime() - start - solveNanos;
+            for (int i = 0; i < buyAk.length; i++) {
+                this.estimateNanos[i] += sharedNanos + this.buySolveNanos[i] + this.sellSolveNanos[i];
+            }
+            this.nextTs += estimateInterval;
+        }
+
+        Result result(int configurationIdx) {
+            int i = this.configurations.indexOf(configurationIdx);
+            List<IntensityInfo> series = this.estimates.get(i);
+            long startTs = this.nextTs - series.size() * estimateInterval;
+            return new Result(ParameterSweep.this.configurations.get(configurationIdx),
+                    new IntensitySeries(startTs, estimateInterval, series.toArray(new IntensityInfo[0])),
+                    this.tickNanos, this.estimateNanos[i]);
+        }
+    }
+
+
+    /**
+     * Columnar chunk of ticks
+     */
+    private static class Chunk {
+        final double[] bids;
+        final double[] asks;
+        final long[] timeStamps;
+        int size = 0;
+
+        Chunk(int capacity) {
+            this.bids = new double[capacity];
+            this.asks = new double[capacity];
+            this.timeStamps = new long[capacity];
+        }
+    }
+
+
+    /**
+     * Fills chunk while previous chunk is processed by groups
+     */
+    private class Reader implements TickConsumer {
+        private final List<Group> groups;
+        private final ExecutorService executor;
+        private final List<Future<Void>> pending = new ArrayList<>();
+        private Chunk filling = new Chunk(chunkSize);
+        private Chunk processing = new Chunk(chunkSize);
+        private long lastTs = Long.MIN_VALUE;
+
+        Reader(List<Group> groups, ExecutorService executor) {
+            this.groups = groups;
+            this.executor = executor;
+        }
+
+        @Override
+        public void onTick(double bid, double ask, long ts) {
+            Chunk c = this.filling;
+            c.bids[c.size] = bid;
+            c.asks[c.size] = ask;
+            c.timeStamps[c.size] = ts;
+            this.lastTs = ts;
+            if (++c.size == c.bids.length) {
+                flush();
+            }
+        }
+
+        void flush() {
+            await();
+            Chunk c = this.filling;
+            this.filling = this.processing;
+            this.filling.size = 0;
+            this.processing = c;
+            for (Group group : this.groups) {
+                group.chunk = c;
+                this.pending.add(EstimationExecutor.submit(this.executor, group));
+            }
+        }
+
+        void await() {
+            try {
+                for (Future<Void> result : this.pending) {
+                    result.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+            this.pending.clear();
+        }
+    }
+
+}
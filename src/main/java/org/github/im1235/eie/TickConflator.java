@@ -0,0 +1,146 @@
+package org.github.im1235.eie;
+
+import org.github.im1235.eie.replay.TickConsumer;
+
+/**
+ * Conflating front-end of estimator, e.g. new TickConflator(estimator::onTick, dt)
+ * <p>
+ * Forwards only ticks that can change calibration: first tick of each dt slot, ticks with new highest bid
+ * (fills sell trackers) or new lowest ask (fills buy trackers) since start of the slot, and the last tick
+ * before dt boundary (mid price of trackers inserted at the boundary). Other ticks can not fill any tracker,
+ * so A and k estimated at time stamps of forwarded ticks are identical to estimates of unconflated ticks.
+ * The last tick of a slot is known once next slot starts, it is held until then or until {@link #flush}.
+ * Not thread safe, single producer.
+ */
+public class TickConflator implements TickConsumer {
+
+    private final TickConsumer consumer;
+    private final long dt;
+    private final boolean aligned;
+    private long origin;
+
+    private boolean started = false;
+    private long slot;
+    private double maxBid; // highest bid since start of slot
+    private double minAsk; // lowest ask since start of slot
+
+    // last tick that has not been forwarded
+    private boolean pending = false;
+    private double pendingBid;
+    private double pendingAsk;
+    private long pendingTs;
+
+    private long forwardedCount = 0;
+    private long mergedCount = 0;
+
+
+    /**
+     * @param consumer receives conflated ticks
+     * @param dt       time scaling quant of the estimator, trackers are inserted every dt from the first tick
+     */
+    public TickConflator(TickConsumer consumer, long dt) {
+        this.consumer = consumer;
+        this.dt = dt;
+        this.aligned = false;
+    }
+
+    /**
+     * @param consumer      receives conflated ticks
+     * @param dt            time scaling quant of the estimator
+     * @param trackerOrigin tracker time origin of the estimator, see {@link IntensityEstimator.Builder#trackerOrigin}
+     */
+    public TickConflator(TickConsumer consumer, long dt, long trackerOrigin) {
+        this.consumer = consumer;
+        this.dt = dt;
+        this.aligned = true;
+        this.origin = trackerOrigin;
+    }
+
+
+    /**
+     * @param bid best market bid price
+     * @param ask best market ask price
+     * @param ts  time stamp, not decreasing
+     */
+    @Override
+    public void onTick(double bid, double ask, long ts) {
+        if (!this.started) {
+            this.started = true;
+            if (!this.aligned) {
+                this.origin = ts;
+            }
+            startSlot(bid, ask, ts);
+            return;
+        }
+        long tickSlot = Math.floorDiv(ts - this.origin, this.dt);
+        if (tickSlot != this.slot) {
+            // last tick before boundary, its mid price is used by trackers inserted at the boundary
+            forwardPending();
+            startSlot(bid, ask, ts);
+            return;
+        }
+        if (bid > this.maxBid || ask < this.minAsk) {
+            // new extreme may fill trackers, pending tick is superseded
+            discardPending();
+            this.maxBid = Math.max(this.maxBid, bid);
+            this.minAsk = Math.min(this.minAsk, ask);
+            forward(bid, ask, ts);
+            return;
+        }
+        discardPending();
+        this.pending = true;
+        this.pendingBid = bid;
+        this.pendingAsk = ask;
+        this.pendingTs = ts;
+    }
+
+
+    /**
+     * Forwards held tick, e.g. at the end of the burst or before estimate
+     */
+    public void flush() {
+        forwardPending();
+    }
+
+    /**
+     * @return number of ticks passed to consumer
+     */
+    public long getForwardedCount() {
+        return this.forwardedCount;
+    }
+
+    /**
+     * @return number of ticks merged into forwarded ticks
+     */
+    public long getMergedCount() {
+        return this.mergedCount;
+    }
+
+
+    private void startSlot(double bid, double ask, long ts) {
+        this.slot = Math.floorDiv(ts - this.origin, this.dt);
+        this.maxBid = bid;
+        this.minAsk = ask;
+        forward(bid, ask, ts);
+    }
+
+    private void forward(double bid, double ask, long ts) {
+        this.forwardedCount++;
+        this.consumer.onTick(bid, ask, ts);
+    }
+
+    private void forwardPending() {
+        if (this.pending) {
+            this.pending = false;
+            forward(this.pendingBid, this.pendingAsk, this.pendingTs);
+        }
+    }
+
+    private void discardPending() {
+        if (this.pending) {
+            this.pending = false;
+            this.mergedCount++;
+        }
+    }
+
+}
@@ -0,0 +1,246 @@
+package org.github.im1235.eie;
+
+import org.github.im1235.eie.calibration.SpreadIntensityCurve;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pipelined async tick processing for single {@link IntensityEstimator}
+ * <p>
+ * Ticks are written by single producer thread into bounded ring buffer of primitive columns (bid, ask, ts).
+ * Two long lived consumer threads, one for sell and one for buy curve, drain available ticks in batches.
+ * No executor task is created per tick, producer only waits when ring buffer is full.
+ * <p>
+ * Ticks of the estimator must be passed only through event loop while it is running.
+ * Consumers pass ticks directly to the curves, so ticks are not recorded in tick latency of {@link EstimatorMetrics}
+ * and by TickProcessed flight recorder events, and estimates are not published on tick.
+ * If a consumer thread fails, its exception is rethrown by {@link #onTick}, {@link #awaitProcessed} and {@link #close}.
+ */
+public class TickEventLoop implements AutoCloseable {
+
+    /**
+     * Specifies how threads wait for ring buffer sequence to move
+     */
+    public enum WaitStrategy {
+        /**
+         * lowest latency, producer and consumer threads occupy whole cores
+         * use only when each of them has dedicated core
+         */
+        BUSY_SPIN {
+            @Override
+            void idle() {
+                Thread.onSpinWait();
+            }
+        },
+        /**
+         * low latency, gives up core to other runnable threads
+         */
+        YIELD {
+            @Override
+            void idle() {
+                Thread.yield();
+            }
+        },
+        /**
+         * highest latency, lowest CPU usage
+         */
+        PARK {
+            @Override
+            void idle() {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        };
+
+        private static final long PARK_NANOS = 1000;
+
+        abstract void idle();
+    }
+
+
+    /**
+     * Consumer thread passing batches of ticks to one curve
+     */
+    private class Consumer implements Runnable {
+        private final SpreadIntensityCurve curve;
+        private final Thread thread;
+        private volatile long processed = 0; // sequences below are processed
+
+        Consumer(SpreadIntensityCurve curve, String name) {
+            this.curve = curve;
+            this.thread = new Thread(this, name);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                consume();
+            } catch (Throwable t) {
+                failure = t;
+            }
+        }
+
+        private void consume() {
+            long next = 0;
+            while (true) {
+                long available = published;
+                if (next == available) {
+                    if (!running) {
+                        return;
+                    }
+                    waitStrategy.idle();
+                    continue;
+                }
+                long end = Math.min(available, next + maxBatchSize);
+                int from = (int) next & mask;
+                int to = (int) (end - 1) & mask;
+                if (from <= to) {
+                    this.curve.onTicks(bids, asks, timeStamps, from, to + 1, w);
+                } else {
+                    // batch wraps around end of ring buffer
+                    this.curve.onTicks(bids, asks, timeStamps, from, bids.length, w);
+                    this.curve.onTicks(bids, asks, timeStamps, 0, to + 1, w);
+                }
+                next = end;
+                this.processed = end;
+            }
+        }
+    }
+
+
+    private final IntensityEstimator estimator;
+    private final WaitStrategy waitStrategy;
+    private final int maxBatchSize;
+    private final long w;
+
+    private final double[] bids;
+    private final double[] asks;
+    private final long[] timeStamps;
+    private final int mask;
+
+    private long nextSequence = 0; // producer thread only
+    // initialization state of the estimator, producer thread only
+    private boolean initialized = false;
+    private Long initDoneTs = null;
+    private volatile long published = 0; // sequences below are visible to consumers
+    private volatile boolean running = true;
+    private volatile Throwable failure = null; // first exception thrown by consumer thread
+
+    private final Consumer sellConsumer;
+    private final Consumer buyConsumer;
+
+
+    /**
+     * @param estimator    estimator receiving ticks
+     * @param capacity     capacity of ring buffer, rounded up to power of 2
+     * @param waitStrategy strategy of waiting producer and consumer threads
+     * @param maxBatchSize max number of ticks passed to curve at once
+     */
+    public TickEventLoop(IntensityEstimator estimator, int capacity, WaitStrategy waitStrategy, int maxBatchSize) {
+        if (capacity < 1 || maxBatchSize < 1) {
+            throw new IllegalArgumentException("capacity and batch size must be positive");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.estimator = estimator;
+        this.waitStrategy = waitStrategy;
+        this.maxBatchSize = maxBatchSize;
+        this.w = estimator.getW();
+        this.bids = new double[size];
+        this.asks = new double[size];
+        this.timeStamps = new long[size];
+        this.mask = size - 1;
+        this.sellConsumer = new Consumer(estimator.getSellExecutionIntensity(), "tick-event-loop-sell");
+        this.buyConsumer = new Consumer(estimator.getBuyExecutionIntensity(), "tick-event-loop-buy");
+        this.sellConsumer.thread.start();
+        this.buyConsumer.thread.start();
+    }
+
+
+    /**
+     * Publishes tick to consumers, must be called from single producer thread
+     *
+     * @param bid best market bid price
+     * @param ask best market ask price
+     * @param ts  time stamp
+     * @return true once estimator has been initialized with sufficient data
+     * @throws IllegalStateException if consumer thread has failed
+     */
+    public boolean onTick(double bid, double ask, long ts) {
+        checkFailure();
+        long sequence = this.nextSequence;
+        // wait for slot to be released by both consumers
+        while (sequence - Math.min(this.sellConsumer.processed, this.buyConsumer.processed) > this.mask) {
+            checkFailure();
+            this.waitStrategy.idle();
+        }
+        int idx = (int) sequence & this.mask;
+        this.bids[idx] = bid;
+        this.asks[idx] = ask;
+        this.timeStamps[idx] = ts;
+        this.nextSequence = sequence + 1;
+        this.published = sequence + 1;
+        if (!this.initialized && (this.initDoneTs == null || this.initDoneTs <= ts)) {
+            // estimator is locked only on the first tick and once its window is covered
+            this.initialized = this.estimator.initOnTick(ts);
+            this.initDoneTs = this.estimator.getInitDoneTs();
+        }
+        return this.initialized;
+    }
+
+
+    /**
+     * Waits until consumers have processed all published ticks
+     *
+     * @throws IllegalStateException if consumer thread has failed
+     */
+    public void awaitProcessed() {
+        long sequence = this.published;
+        while (this.sellConsumer.processed < sequence || this.buyConsumer.processed < sequence) {
+            checkFailure();
+            this.waitStrategy.idle();
+        }
+        checkFailure();
+    }
+
+
+    /**
+     * Waits until all published ticks are processed and estimates A and k, see {@link IntensityEstimator#estimate}
+     *
+     * @param ts current time stamp
+     * @return estimates of A and k
+     */
+    public IntensityInfo estimate(long ts) {
+        awaitProcessed();
+        return this.estimator.estimate(ts);
+    }
+
+
+    /**
+     * Processes published ticks and stops consumer threads, returns early if calling thread is interrupted
+     *
+     * @throws IllegalStateException if consumer thread has failed
+     */
+    @Override
+    public void close() {
+        this.running = false;
+        try {
+            this.sellConsumer.thread.join();
+            this.buyConsumer.thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        checkFailure();
+    }
+
+
+    private void checkFailure() {
+        Throwable failure = this.failure;
+        if (failure != null) {
+            throw new IllegalStateException("tick event loop consumer failed", failure);
+        }
+    }
+
+}
@@ -18,8 +18,38 @@ abstract class AbstractAkSolver {
 
     /**
      * @param intensities Array of intensities (Y axis of Spread - Intensity curve)
-     * @return implemented method should return array with estimated A and k [A, k]
+     * @return array with estimated A and k [A, k]
      */
-    abstract double[] solveAk(double[] intensities);
+    double[] solveAk(double[] intensities) {
+        double[] ak = new double[2];
+        solveAk(intensities, ak);
+        return ak;
+    }
+
+    /**
+     * Allocation free implementation of {@link #solveAk(double[])}
+     *
+     * @param intensities Array of intensities (Y axis of Spread - Intensity curve)
+     * @param ak          output, estimated A and k [A, k]
+     */
+    abstract void solveAk(double[] intensities, double[] ak);
+
+    /**
+     * Solvers that weight spreads by number of fills override this method, see {@link #usesFillCounts}
+     *
+     * @param intensities Array of intensities (Y axis of Spread - Intensity curve)
+     * @param fillCounts  number of fills in evaluation window at each spread
+     * @param ak          output, estimated A and k [A, k]
+     */
+    void solveAk(double[] intensities, double[] fillCounts, double[] ak) {
+        solveAk(intensities, ak);
+    }
+
+    /**
+     * @return true if solver needs fill counts
+     */
+    boolean usesFillCounts() {
+        return false;
+    }
 
 }
@@ -0,0 +1,719 @@
+package org.github.im1235.eie.calibration;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Tracker store of order execution intensity estimators
+ * <p>
+ * Single tracker is inserted every dt and tracks fills at all spread levels. Order at a spread closer to mid price
+ * is always filled before (or together with) order at a wider spread, so tracker only remembers first level
+ * that is not filled yet.
+ * <p>
+ * Trackers are held in slots of growable primitive buffers, linked in order of insertion and indexed by price of the
+ * first unfilled level. Slots of dropped trackers are reused through a free list, implementations that do not need
+ * trackers filled at all levels drop them at fill ({@link #keepsFilledTrackers}), so only unfilled trackers are stored. Prices are stored as longs, either half ticks of tick size (fixed point) or order preserving encoding
+ * of double prices, so fills are decided by integer compares. Implementations aggregate fills and waiting times in {@link #onTrackerAdded},
+ * {@link #onTrackerFilled} and {@link #onTrackerExpired}.
+ */
+abstract class AbstractIntensityEstimator {
+
+    /**
+     * Implementation specifies fill criterion
+     * Separate implementations for buy / sell limit orders
+     */
+    private abstract class Fill {
+        /**
+         * @param filledPrice current market price at which orders are filled
+         * @param orderPrice  price of placed limit order
+         * @return true if order is filled
+         */
+        abstract boolean isOrderFilled(long filledPrice, long orderPrice);
+    }
+
+
+    static final int INITIAL_CAPACITY = 16; // power of 2
+
+    final double[] spreads;
+    final int nSpreads;
+    final long dt;
+    final double tickSize; // 0 if prices are not fixed point
+    private final double halfTicksPerPrice;
+    private final long[] spreadHalfTicks; // spreads in half ticks, null if prices are not fixed point
+    private final long levelHalfTicks; // distance of uniform fixed point spreads, 0 if levels are searched
+    final long fillDirection; // 1 if filled by higher price (sell), -1 if filled by lower price (buy)
+    private final Fill fillComp;
+    private boolean initializing = true;
+    private long lastPrice = Double.doubleToRawLongBits(Double.NaN); // reference price
+    private long lastLimitOrderInserted = 0;
+    private boolean aligned = false; // trackers are inserted at trackerOrigin + k * dt
+    private long trackerOrigin = 0;
+
+    /**
+     * start time of tracker in slot, trackers are expired from the head of the insertion order
+     */
+    long[] trackerStartTs = new long[INITIAL_CAPACITY];
+    /**
+     * reference price at insertion, half ticks or raw bits of double price, see {@link #orderPrice}
+     */
+    private long[] trackerRefPrice = new long[INITIAL_CAPACITY];
+    /**
+     * first spread level at which order is not filled, nSpreads once filled at all levels
+     */
+    int[] trackerLevel = new int[INITIAL_CAPACITY];
+    /**
+     * order price at trackerLevel, comparable as long
+     */
+    private long[] trackerPrice = new long[INITIAL_CAPACITY];
+    /**
+     * position of tracker in liveTrackers price index, -1 once tracker is filled at all levels
+     */
+    private int[] trackerHeapIdx = new int[INITIAL_CAPACITY];
+    /**
+     * next (newer) tracker in order of insertion, -1 for the tail, next free slot for slots in free list
+     */
+    int[] trackerNext = new int[INITIAL_CAPACITY];
+    /**
+     * previous (older) tracker in order of insertion, -1 for the head
+     */
+    private int[] trackerPrev = new int[INITIAL_CAPACITY];
+    int trackersHead = -1; // oldest tracker
+    private int trackersTail = -1; // newest tracker
+    int trackersCount = 0;
+    private int freeSlot = -1; // head of free list
+    private int usedSlots = 0; // slots at and above are never used
+
+    /**
+     * slots of trackers that are not filled at all levels, binary heap ordered by order price at trackerLevel
+     * head of the heap is the order that gets filled first (lowest sell / highest buy price)
+     */
+    private int[] liveTrackers = new int[INITIAL_CAPACITY];
+    private int liveTrackersCount = 0;
+    long fillCount = 0; // number of filled spread levels since creation
+    long scanCount = 0; // number of trackers filled or expired since creation
+    long skippedScanCount = 0; // number of ticks that took fast path
+
+
+    /**
+     * @param spreads         distances from mid price, use negative sign for buy limit and positive for sell limit,
+     *                        ordered from closest to widest
+     * @param spreadDirection -1 for sell limit orders, 1 for buy limit
+     * @param dt
+     */
+    AbstractIntensityEstimator(double[] spreads, double spreadDirection, long dt) {
+        this(spreads, spreadDirection, dt, 0);
+    }
+
+
+    /**
+     * @param spreads         distances from mid price, use negative sign for buy limit and positive for sell limit,
+     *                        ordered from closest to widest
+     * @param spreadDirection -1 for sell limit orders, 1 for buy limit
+     * @param dt
+     * @param tickSize        prices are fixed point half ticks if positive, spreads must be multiples of half tick
+     */
+    AbstractIntensityEstimator(double[] spreads, double spreadDirection, long dt, double tickSize) {
+        this.spreads = spreads.clone();
+        this.nSpreads = spreads.length;
+        this.dt = dt;
+        this.tickSize = tickSize > 0 ? tickSize : 0;
+        this.halfTicksPerPrice = tickSize > 0 ? 2 / tickSize : 0;
+        if (tickSize > 0) {
+            this.spreadHalfTicks = new long[this.nSpreads];
+            for (int i = 0; i < this.nSpreads; i++) {
+                double halfTicks = spreads[i] * this.halfTicksPerPrice;
+                this.spreadHalfTicks[i] = Math.round(halfTicks);
+                if (Math.abs(halfTicks - this.spreadHalfTicks[i]) > 1e-6) {
+                    throw new IllegalArgumentException("spread " + spreads[i] + " is not multiple of half tick " + tickSize / 2);
+                }
+            }
+        } else {
+            this.spreadHalfTicks = null;
+        }
+        this.levelHalfTicks = uniformLevelHalfTicks(this.spreadHalfTicks);
+        this.fillDirection = spreadDirection > 0 ? 1 : -1;
+        if (spreadDirection > 0) {
+            // concrete sell limit order fill comparator
+            this.fillComp = new Fill() {
+                @Override
+                boolean isOrderFilled(long filledPrice, long orderPrice) {
+                    return filledPrice > orderPrice;
+                }
+            };
+        } else {
+            // concrete buy limit order fill comparator
+            this.fillComp = new Fill() {
+                @Override
+                boolean isOrderFilled(long filledPrice, long orderPrice) {
+                    return filledPrice < orderPrice;
+                }
+            };
+        }
+    }
+
+
+    /**
+     * @param spreads         distances from mid price, ordered from closest to widest
+     * @param spreadDirection -1 for sell limit orders, 1 for buy limit
+     * @param dt
+     * @param windowType      aggregation of fills and waiting times
+     * @param w               window width or half-life in time units
+     * @param tickSize        prices are fixed point half ticks if positive
+     * @return estimator of window type
+     */
+    static AbstractIntensityEstimator create(double[] spreads, double spreadDirection, long dt, WindowType windowType, long w,
+                                             double tickSize) {
+        switch (windowType) {
+            case EXPONENTIAL_DECAY:
+                return new DecayedIntensityEstimator(spreads, spreadDirection, dt, w, tickSize);
+            case SLIDING:
+            default:
+                return new EmpiricalIntensityEstimator(spreads, spreadDirection, dt, tickSize);
+        }
+    }
+
+
+    /**
+     * @param refPrice    reference price (mid price)
+     * @param fillPrice   current market price at which orders are filled
+     * @param ts          current time stamp
+     * @param windowStart start of evaluation window, older data is deleted
+     */
+    final void onTick(double refPrice, double fillPrice, long ts, long windowStart) {
+        if (this.spreadHalfTicks != null) {
+            onTickPrices(Math.round(refPrice * this.halfTicksPerPrice), Math.round(fillPrice * this.halfTicksPerPrice), ts, windowStart);
+        } else {
+            onTickPrices(Double.doubleToRawLongBits(refPrice), comparable(fillPrice), ts, windowStart);
+        }
+    }
+
+
+    /**
+     * Fixed point implementation of {@link #onTick}
+     *
+     * @param refHalfTicks  reference price (mid price) in half ticks
+     * @param fillHalfTicks current market price at which orders are filled in half ticks
+     * @param ts            current time stamp
+     * @param windowStart   start of evaluation window, older data is deleted
+     * @throws IllegalStateException if estimator was created without tick size
+     */
+    final void onTickHalfTicks(long refHalfTicks, long fillHalfTicks, long ts, long windowStart) {
+        if (this.spreadHalfTicks == null) {
+            throw new IllegalStateException("estimator was created without tick size");
+        }
+        onTickPrices(refHalfTicks, fillHalfTicks, ts, windowStart);
+    }
+
+
+    /**
+     * Called at the start of each tick before trackers are updated
+     *
+     * @param ts current time stamp
+     */
+    void onTickStarted(long ts) {
+    }
+
+
+    /**
+     * @param refPrice    reference price as stored in trackerRefPrice
+     * @param fillPrice   comparable fill price
+     * @param ts          current time stamp
+     * @param windowStart start of evaluation window, older data is deleted
+     */
+    private void onTickPrices(long refPrice, long fillPrice, long ts, long windowStart) {
+        onTickStarted(ts);
+
+        if(this.initializing){
+            this.initializing = false;
+            this.lastLimitOrderInserted = ts - this.dt;
+            if (this.aligned) {
+                // last tracker time at or before ts, tracker at ts is inserted below
+                long alignedTs = this.trackerOrigin + Math.floorDiv(ts - this.trackerOrigin, this.dt) * this.dt;
+                if (alignedTs != ts) {
+                    this.lastLimitOrderInserted = alignedTs;
+                }
+            }
+        }
+
+        // fast path, no tracker is due for insertion or expiry and fill price is not past the best unfilled order
+        if (this.lastLimitOrderInserted + this.dt > ts
+                && (this.trackersCount == 0 || windowStart <= this.trackerStartTs[this.trackersHead])
+                && (this.liveTrackersCount == 0 || !this.fillComp.isOrderFilled(fillPrice, this.trackerPrice[this.liveTrackers[0]]))) {
+            this.lastPrice = refPrice;
+            this.skippedScanCount++;
+            return;
+        }
+
+        // insert new tracker every dt
+        while (this.lastLimitOrderInserted + this.dt < ts){
+            this.lastLimitOrderInserted = this.lastLimitOrderInserted + dt;
+            // add new tracker, price is last recived price
+            addTracker(this.lastPrice, this.lastLimitOrderInserted);
+        }
+
+        // insert new tracker evrey dt
+        if (this.lastLimitOrderInserted + this.dt == ts){
+            this.lastLimitOrderInserted = ts;
+            addTracker(refPrice, ts);
+        }
+
+        this.lastPrice = refPrice;
+
+        removeExpiredTrackers(windowStart);
+
+        // pop trackers from the head of the price index while order is filled
+        while (this.liveTrackersCount > 0 && this.fillComp.isOrderFilled(fillPrice, this.trackerPrice[this.liveTrackers[0]])) {
+            int slot = this.liveTrackers[0];
+            int level = this.trackerLevel[slot];
+
+            // order is filled at all levels up to first level that is not filled
+            int filledLevel = level;
+            if (this.levelHalfTicks > 0) {
+                // uniform fixed point spreads, first level whose order price is at or beyond fill price
+                long distance = this.fillDirection * (fillPrice - this.trackerRefPrice[slot] - this.spreadHalfTicks[0]);
+                filledLevel = (int) Math.min(this.nSpreads, -Math.floorDiv(-distance, this.levelHalfTicks));
+            } else {
+                do {
+                    filledLevel++;
+                } while (filledLevel < this.nSpreads
+                        && this.fillComp.isOrderFilled(fillPrice, orderPrice(this.trackerRefPrice[slot], filledLevel)));
+            }
+            onTrackerFilled(slot, level, filledLevel, ts);
+            this.fillCount += filledLevel - level;
+            this.scanCount++;
+
+            this.trackerLevel[slot] = filledLevel;
+            if (filledLevel == this.nSpreads) {
+                removeLiveTracker(slot);
+                if (!keepsFilledTrackers()) {
+                    releaseTracker(slot);
+                }
+            } else {
+                this.trackerPrice[slot] = orderPrice(this.trackerRefPrice[slot], filledLevel);
+                siftDown(0, slot);
+            }
+        }
+    }
+
+
+    /**
+     * @param ts          current time stamp
+     * @param windowStart start of evaluation window, older data is deleted
+     * @param intensities output, empirical estimate of lambda (intensity) for each spread
+     */
+    abstract void estimateIntensities(long ts, long windowStart, double[] intensities);
+
+
+    /**
+     * Number of fills at each spread level in the window of the last {@link #estimateIntensities}
+     *
+     * @param fillCounts output, number of fills for each spread
+     */
+    abstract void getFillCounts(double[] fillCounts);
+
+
+    /**
+     * @param liveCounts output, number of trackers whose order at spread level i is not filled yet
+     */
+    abstract void getLiveTrackerCounts(int[] liveCounts);
+
+
+    /**
+     * Tracker has been inserted at level 0
+     *
+     * @param slot tracker buffer slot
+     */
+    abstract void onTrackerAdded(int slot);
+
+
+    /**
+     * Order of live tracker has been filled at levels fromLevel (inclusive) to toLevel (exclusive),
+     * trackerLevel is still fromLevel
+     *
+     * @param slot      tracker buffer slot
+     * @param fromLevel first filled level
+     * @param toLevel   first level that is not filled, nSpreads if filled at all levels
+     * @param ts        time stamp of fill
+     */
+    abstract void onTrackerFilled(int slot, int fromLevel, int toLevel, long ts);
+
+
+    /**
+     * Oldest tracker is dropped, tracker is live if trackerLevel is less than nSpreads
+     *
+     * @param slot tracker buffer slot
+     */
+    abstract void onTrackerExpired(int slot);
+
+
+    /**
+     * Tracker buffers are doubled, implementation grows its per tracker data with {@link #grow}
+     *
+     * @param newCapacity capacity of tracker buffers
+     */
+    abstract void onTrackersGrown(int newCapacity);
+
+
+    /**
+     * @return true if tracker filled at all levels is kept until it expires, false if it is dropped at fill
+     * and {@link #onTrackerExpired} is called only for live trackers
+     */
+    boolean keepsFilledTrackers() {
+        return true;
+    }
+
+
+    /**
+     * Aligns tracker insertion times to origin + k * dt instead of time stamp of the first tick
+     * Tracker times of estimator started at any tick then match estimator started at origin
+     *
+     * @param origin tracker time origin
+     * @throws IllegalStateException if ticks have already been processed
+     */
+    void alignTrackers(long origin) {
+        if (!this.initializing) {
+            throw new IllegalStateException("trackers can be aligned only before first tick");
+        }
+        this.aligned = true;
+        this.trackerOrigin = origin;
+    }
+
+
+    /**
+     * @return number of bytes written by {@link #writeState}
+     */
+    int stateSize() {
+        return 4 + 8 + 8 + 8 * this.nSpreads // configuration
+                + 2 + 8 + 8 + 8 // insertion state
+                + 8 + this.trackersCount * (8 + 8 + 4 + 4) // trackers and their position in price index
+                + aggregateStateSize();
+    }
+
+
+    /**
+     * Writes configuration, trackers in order of insertion, price index and aggregates
+     *
+     * @param buffer little endian buffer with {@link #stateSize} bytes remaining
+     */
+    void writeState(ByteBuffer buffer) {
+        buffer.putInt(this.nSpreads).putLong(this.dt).putDouble(this.tickSize);
+        for (double spread : this.spreads) {
+            buffer.putDouble(spread);
+        }
+        buffer.put((byte) (this.initializing ? 1 : 0)).put((byte) (this.aligned ? 1 : 0))
+                .putLong(this.lastPrice).putLong(this.lastLimitOrderInserted).putLong(this.trackerOrigin);
+        buffer.putInt(this.trackersCount).putInt(this.liveTrackersCount);
+        // heap position is kept, so fills are processed in the same order after restore
+        for (int slot = this.trackersHead; slot >= 0; slot = this.trackerNext[slot]) {
+            buffer.putLong(this.trackerStartTs[slot]).putLong(this.trackerRefPrice[slot]).putInt(this.trackerLevel[slot])
+                    .putInt(this.trackerHeapIdx[slot]);
+        }
+        writeAggregateState(buffer);
+    }
+
+
+    /**
+     * Replaces state with state written by {@link #writeState}, trackers are moved to slots 0..count-1 in order of insertion
+     *
+     * @param buffer little endian buffer
+     * @throws IllegalArgumentException if state was written by estimator with different spreads, dt or tick size
+     */
+    void readState(ByteBuffer buffer) {
+        int nSpreads = buffer.getInt();
+        long dt = buffer.getLong();
+        double tickSize = buffer.getDouble();
+        boolean sameSpreads = nSpreads == this.nSpreads && dt == this.dt && tickSize == this.tickSize;
+        for (int i = 0; i < nSpreads; i++) {
+            sameSpreads &= i < this.nSpreads && buffer.getDouble() == this.spreads[i];
+        }
+        if (!sameSpreads) {
+            throw new IllegalArgumentException("state was written by estimator with different spreads, dt or tick size");
+        }
+        this.initializing = buffer.get() != 0;
+        this.aligned = buffer.get() != 0;
+        this.lastPrice = buffer.getLong();
+        this.lastLimitOrderInserted = buffer.getLong();
+        this.trackerOrigin = buffer.getLong();
+        int count = buffer.getInt();
+        int liveCount = buffer.getInt();
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < count) {
+            capacity <<= 1;
+        }
+        this.trackerStartTs = new long[capacity];
+        this.trackerRefPrice = new long[capacity];
+        this.trackerLevel = new int[capacity];
+        this.trackerPrice = new long[capacity];
+        this.trackerHeapIdx = new int[capacity];
+        this.trackerNext = new int[capacity];
+        this.trackerPrev = new int[capacity];
+        this.liveTrackers = new int[capacity];
+        this.trackersHead = count > 0 ? 0 : -1;
+        this.trackersTail = count - 1;
+        this.trackersCount = count;
+        this.freeSlot = -1;
+        this.usedSlots = count;
+        this.liveTrackersCount = liveCount;
+        for (int slot = 0; slot < count; slot++) {
+            this.trackerStartTs[slot] = buffer.getLong();
+            this.trackerRefPrice[slot] = buffer.getLong();
+            int level = buffer.getInt();
+            int heapIdx = buffer.getInt();
+            this.trackerLevel[slot] = level;
+            this.trackerHeapIdx[slot] = heapIdx;
+            this.trackerNext[slot] = slot + 1 < count ? slot + 1 : -1;
+            this.trackerPrev[slot] = slot - 1;
+            if (level < this.nSpreads) {
+                if (heapIdx < 0 || heapIdx >= liveCount) {
+                    throw new IllegalArgumentException("state has invalid price index");
+                }
+                this.trackerPrice[slot] = orderPrice(this.trackerRefPrice[slot], level);
+                this.liveTrackers[heapIdx] = slot;
+            }
+        }
+        readAggregateState(buffer, capacity);
+    }
+
+
+    /**
+     * @return number of bytes written by {@link #writeAggregateState}
+     */
+    abstract int aggregateStateSize();
+
+    /**
+     * Writes per tracker data in order of insertion and aggregates of fills and waiting times
+     *
+     * @param buffer little endian buffer
+     */
+    abstract void writeAggregateState(ByteBuffer buffer);
+
+    /**
+     * Reads state written by {@link #writeAggregateState}, tracker buffers have been replaced with trackers in slots
+     * 0..trackersCount-1 in order of insertion
+     *
+     * @param buffer   little endian buffer
+     * @param capacity capacity of tracker buffers
+     */
+    abstract void readAggregateState(ByteBuffer buffer, int capacity);
+
+    /**
+     * @return estimator with the same configuration and no trackers, used to read state before it replaces this one
+     */
+    abstract AbstractIntensityEstimator emptyCopy();
+
+
+    /**
+     * Drops trackers older than windowStart, trackers are expired in order of insertion
+     *
+     * @param windowStart start of evaluation window
+     */
+    void removeExpiredTrackers(long windowStart) {
+        while (this.trackersCount > 0 && windowStart > this.trackerStartTs[this.trackersHead]) {
+            int slot = this.trackersHead;
+            onTrackerExpired(slot);
+            if (this.trackerLevel[slot] < this.nSpreads) {
+                // tracker is still live, remove from price index
+                removeLiveTracker(slot);
+            }
+            releaseTracker(slot);
+            this.scanCount++;
+        }
+    }
+
+
+    /**
+     * Adds tracker to the tail of insertion order and to price index
+     *
+     * @param refPrice reference price at insertion, as stored in trackerRefPrice
+     * @param startTs  tracker start time stamp
+     */
+    private void addTracker(long refPrice, long startTs) {
+        int slot = this.freeSlot;
+        if (slot >= 0) {
+            this.freeSlot = this.trackerNext[slot];
+        } else {
+            if (this.usedSlots == this.trackerStartTs.length) {
+                growTrackers();
+            }
+            slot = this.usedSlots++;
+        }
+        this.trackerNext[slot] = -1;
+        this.trackerPrev[slot] = this.trackersTail;
+        if (this.trackersTail >= 0) {
+            this.trackerNext[this.trackersTail] = slot;
+        } else {
+            this.trackersHead = slot;
+        }
+        this.trackersTail = slot;
+        this.trackersCount++;
+        this.trackerStartTs[slot] = startTs;
+        this.trackerRefPrice[slot] = refPrice;
+        this.trackerLevel[slot] = 0;
+        this.trackerPrice[slot] = orderPrice(refPrice, 0);
+        onTrackerAdded(slot);
+        siftUp(this.liveTrackersCount++, slot);
+    }
+
+
+    /**
+     * Unlinks tracker from insertion order and returns its slot to free list, tracker is not in price index
+     *
+     * @param slot tracker buffer slot
+     */
+    private void releaseTracker(int slot) {
+        int prev = this.trackerPrev[slot];
+        int next = this.trackerNext[slot];
+        if (prev >= 0) {
+            this.trackerNext[prev] = next;
+        } else {
+            this.trackersHead = next;
+        }
+        if (next >= 0) {
+            this.trackerPrev[next] = prev;
+        } else {
+            this.trackersTail = prev;
+        }
+        this.trackersCount--;
+        this.trackerNext[slot] = this.freeSlot;
+        this.freeSlot = slot;
+    }
+
+
+    /**
+     * Doubles tracker buffers, slots keep their index
+     */
+    private void growTrackers() {
+        int newCapacity = this.trackerStartTs.length * 2;
+        onTrackersGrown(newCapacity);
+        this.trackerStartTs = grow(this.trackerStartTs, 1, newCapacity);
+        this.trackerRefPrice = grow(this.trackerRefPrice, 1, newCapacity);
+        this.trackerLevel = Arrays.copyOf(this.trackerLevel, newCapacity);
+        this.trackerPrice = grow(this.trackerPrice, 1, newCapacity);
+        this.trackerHeapIdx = Arrays.copyOf(this.trackerHeapIdx, newCapacity);
+        this.trackerNext = Arrays.copyOf(this.trackerNext, newCapacity);
+        this.trackerPrev = Arrays.copyOf(this.trackerPrev, newCapacity);
+        this.liveTrackers = Arrays.copyOf(this.liveTrackers, newCapacity);
+    }
+
+
+    /**
+     * @param data        per tracker data, stride values per slot
+     * @param stride      number of values per slot
+     * @param newCapacity capacity of tracker buffers
+     * @return grown data
+     */
+    static long[] grow(long[] data, int stride, int newCapacity) {
+        return Arrays.copyOf(data, newCapacity * stride);
+    }
+
+    static double[] grow(double[] data, int newCapacity) {
+        return Arrays.copyOf(data, newCapacity);
+    }
+
+
+    /**
+     * @param refPrice reference price as stored in trackerRefPrice
+     * @param level    spread level
+     * @return comparable order price at spread level
+     */
+    private long orderPrice(long refPrice, int level) {
+        if (this.spreadHalfTicks != null) {
+            return refPrice + this.spreadHalfTicks[level];
+        }
+        return comparable(Double.longBitsToDouble(refPrice) + this.spreads[level]);
+    }
+
+    /**
+     * @param spreadHalfTicks spreads in half ticks, null if prices are not fixed point
+     * @return absolute distance of spread levels if spreads are uniform, otherwise 0
+     */
+    private static long uniformLevelHalfTicks(long[] spreadHalfTicks) {
+        if (spreadHalfTicks == null || spreadHalfTicks.length < 2) {
+            return 0;
+        }
+        long step = spreadHalfTicks[1] - spreadHalfTicks[0];
+        for (int i = 2; i < spreadHalfTicks.length; i++) {
+            if (spreadHalfTicks[i] - spreadHalfTicks[i - 1] != step) {
+                return 0;
+            }
+        }
+        return Math.abs(step);
+    }
+
+    /**
+     * @param price finite price
+     * @return long that is ordered as price
+     */
+    private static long comparable(double price) {
+        long bits = Double.doubleToRawLongBits(price + 0.0); // -0.0 equals 0.0
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+
+    /**
+     * Removes tracker from price index
+     *
+     * @param slot tracker buffer slot of live tracker
+     */
+    private void removeLiveTracker(int slot) {
+        int idx = this.trackerHeapIdx[slot];
+        this.trackerHeapIdx[slot] = -1;
+        int last = this.liveTrackers[--this.liveTrackersCount];
+        if (last != slot) {
+            // move last heap element into the gap and restore heap order
+            siftDown(idx, last);
+            if (this.trackerHeapIdx[last] == idx) {
+                siftUp(idx, last);
+            }
+        }
+    }
+
+
+    /**
+     * @param a tracker slot
+     * @param b tracker slot
+     * @return true if a is filled before b (price of a is filled by price of b)
+     */
+    private boolean isFilledBefore(int a, int b) {
+        return this.fillComp.isOrderFilled(this.trackerPrice[b], this.trackerPrice[a]);
+    }
+
+
+    private void siftUp(int idx, int slot) {
+        while (idx > 0) {
+            int parentIdx = (idx - 1) >>> 1;
+            int parent = this.liveTrackers[parentIdx];
+            if (!isFilledBefore(slot, parent)) {
+                break;
+            }
+            this.liveTrackers[idx] = parent;
+            this.trackerHeapIdx[parent] = idx;
+            idx = parentIdx;
+        }
+        this.liveTrackers[idx] = slot;
+        this.trackerHeapIdx[slot] = idx;
+    }
+
+
+    private void siftDown(int idx, int slot) {
+        int half = this.liveTrackersCount >>> 1;
+        while (idx < half) {
+            int childIdx = 2 * idx + 1;
+            int child = this.liveTrackers[childIdx];
+            int rightIdx = childIdx + 1;
+            if (rightIdx < this.liveTrackersCount && isFilledBefore(this.liveTrackers[rightIdx], child)) {
+                childIdx = rightIdx;
+                child = this.liveTrackers[childIdx];
+            }
+            if (!isFilledBefore(child, slot)) {
+                break;
+            }
+            this.liveTrackers[idx] = child;
+            this.trackerHeapIdx[child] = idx;
+            idx = childIdx;
+        }
+        this.liveTrackers[idx] = slot;
+        this.trackerHeapIdx[slot] = idx;
+    }
+
+}
@@ -0,0 +1,58 @@
+package org.github.im1235.eie.calibration;
+
+/**
+ * Implementation, solver of A and k, linear time variant of {@link AkMultiCurveSolver}
+ * <p>
+ * Spreads are uniformly spaced δi = δ0 + i * s, so pair (i, j) gives k'ij = (log(λi) - log(λj)) / ((j - i) * s).
+ * Sum of k' over all pairs with the same distance d = j - i is difference of prefix sums of log(λ), so
+ * k = mean(k'1, k'2, ... k'Ns) is computed in O(N) instead of O(N^2).
+ * A is mean of λi * e^(k * δi), estimate of A for each point given k.
+ */
+class AkLinearMultiCurveSolver extends AbstractAkSolver {
+
+    private final double spreadStep; // distance of neighbouring spreads
+    private final double[] logIntensityPrefixSum; // logIntensityPrefixSum[i] = log(λ0) + ... + log(λi-1)
+
+    /**
+     * @param spreadSpecification Array of uniformly spaced spreads (X axis of Spread - Intensity curve)
+     * @throws IllegalArgumentException if spreads are not uniformly spaced
+     */
+    AkLinearMultiCurveSolver(double[] spreadSpecification) {
+        super(spreadSpecification);
+        int n = super.spreadSpecification.length;
+        this.spreadStep = n > 1 ? super.spreadSpecification[1] - super.spreadSpecification[0] : Double.NaN;
+        for (int i = 2; i < n; i++) {
+            double expected = super.spreadSpecification[0] + i * this.spreadStep;
+            if (Math.abs(super.spreadSpecification[i] - expected) > 1e-9 * Math.abs(this.spreadStep)) {
+                throw new IllegalArgumentException("spreads must be uniformly spaced");
+            }
+        }
+        this.logIntensityPrefixSum = new double[n + 1];
+    }
+
+    /**
+     * @param intensities Array of intensities (Y axis of Spread - Intensity curve)
+     * @param ak          output, estimated A and k [A, k]
+     */
+    @Override
+    void solveAk(double[] intensities, double[] ak) {
+        int n = super.spreadSpecification.length;
+        double[] prefix = this.logIntensityPrefixSum;
+        for (int i = 0; i < n; i++) {
+            prefix[i + 1] = prefix[i] + Math.log(intensities[i]);
+        }
+        // Σ over pairs at distance d of log(λi) - log(λi+d) = Σ log(λ0..λn-d-1) - Σ log(λd..λn-1)
+        double kSum = 0;
+        for (int d = 1; d < n; d++) {
+            kSum += (prefix[n - d] - (prefix[n] - prefix[d])) / d;
+        }
+        double k = kSum / ((double) n * (n - 1) / 2 * this.spreadStep);
+        double aSum = 0;
+        for (int i = 0; i < n; i++) {
+            aSum += intensities[i] * Math.exp(k * super.spreadSpecification[i]);
+        }
+        ak[0] = aSum / n;
+        ak[1] = k;
+    }
+
+}
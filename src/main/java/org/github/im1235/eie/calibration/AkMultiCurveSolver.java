@@ -1,7 +1,5 @@
 package org.github.im1235.eie.calibration;
 
-import org.apache.commons.math3.stat.descriptive.moment.Mean;
-
 /**
  * Implementation, solver of A and k,
  * <p>
@@ -15,7 +13,6 @@ class AkMultiCurveSolver extends AbstractAkSolver {
 
     private final double[] kEstimates;
     private final double[] aEstimates;
-    private final Mean me = new Mean();
 
     /**
      * @param spreadSpecification Array of spreads (X axis of Spread - Intensity curve)
@@ -29,10 +26,10 @@ class AkMultiCurveSolver extends AbstractAkSolver {
 
     /**
      * @param intensities Array of intensities (Y axis of Spread - Intensity curve)
-     * @return array with estimated A and k [A, k]
+     * @param ak          output, estimated A and k [A, k]
      */
     @Override
-    double[] solveAk(double[] intensities) {
+    void solveAk(double[] intensities, double[] ak) {
         int estIdx = 0;
         for (int i = 0; i < intensities.length - 1; i++) {
             for (int j = i + 1; j < intensities.length; j++) {
@@ -41,7 +38,28 @@ class AkMultiCurveSolver extends AbstractAkSolver {
                 estIdx++;
             }
         }
-        return new double[]{this.me.evaluate(aEstimates), this.me.evaluate(kEstimates)};
+        ak[0] = mean(this.aEstimates);
+        ak[1] = mean(this.kEstimates);
+    }
+
+
+    /**
+     * Two pass mean with correction term, same as commons-math Mean without allocating its Sum
+     *
+     * @param values
+     * @return mean of values
+     */
+    static double mean(double[] values) {
+        double sum = 0;
+        for (double v : values) {
+            sum += v;
+        }
+        double xbar = sum / values.length;
+        double correction = 0;
+        for (double v : values) {
+            correction += v - xbar;
+        }
+        return xbar + correction / values.length;
     }
 
 }
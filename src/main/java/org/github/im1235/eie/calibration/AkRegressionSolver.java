@@ -1,38 +1,56 @@
 package org.github.im1235.eie.calibration;
 
-import org.apache.commons.math3.stat.regression.SimpleRegression;
-
-import java.util.stream.IntStream;
-
 /**
  * Implementation, solver of A and k
  * performs OLS regression of log(λ) on δ.
  * k = -slope
  * A = e^intercept
+ * <p>
+ * Spreads are fixed, so slope and intercept are dot products of log(λ) with weights precomputed at construction
  */
 class AkRegressionSolver extends AbstractAkSolver {
 
-    private final SimpleRegression simpleRegression = new SimpleRegression(true);
+    private final double[] slopeWeights; // (δi - mean(δ)) / Σ(δ - mean(δ))^2
+    private final double[] interceptWeights; // 1/N - mean(δ) * slopeWeights
 
     /**
      * @param spreadSpecification Array of spreads (X axis of Spread - Intensity curve)
      */
     AkRegressionSolver(double[] spreadSpecification) {
         super(spreadSpecification);
+        int n = super.spreadSpecification.length;
+        double mean = 0;
+        for (double s : super.spreadSpecification) {
+            mean += s;
+        }
+        mean /= n;
+        double sxx = 0;
+        for (double s : super.spreadSpecification) {
+            sxx += (s - mean) * (s - mean);
+        }
+        this.slopeWeights = new double[n];
+        this.interceptWeights = new double[n];
+        for (int i = 0; i < n; i++) {
+            this.slopeWeights[i] = (super.spreadSpecification[i] - mean) / sxx;
+            this.interceptWeights[i] = 1.0 / n - mean * this.slopeWeights[i];
+        }
     }
 
     /**
      * @param intensities Array of intensities (Y axis of Spread - Intensity curve)
-     * @return array with estimated A and k [A, k]
+     * @param ak          output, estimated A and k [A, k]
      */
     @Override
-    double[] solveAk(double[] intensities) {
-        this.simpleRegression.clear();
-
-        IntStream.range(0, spreadSpecification.length)
-                .forEach(i -> simpleRegression.addData(super.spreadSpecification[i], Math.log(intensities[i])));
-
-        return new double[]{Math.exp(simpleRegression.getIntercept()), -simpleRegression.getSlope()};
+    void solveAk(double[] intensities, double[] ak) {
+        double slope = 0;
+        double intercept = 0;
+        for (int i = 0; i < this.slopeWeights.length; i++) {
+            double y = Math.log(intensities[i]);
+            slope += this.slopeWeights[i] * y;
+            intercept += this.interceptWeights[i] * y;
+        }
+        ak[0] = Math.exp(intercept);
+        ak[1] = -slope;
     }
 
 }
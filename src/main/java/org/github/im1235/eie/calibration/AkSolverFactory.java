@@ -7,7 +7,10 @@ public class AkSolverFactory {
 
     public enum SolverType {
         LOG_REGRESSION,
-        MULTI_CURVE
+        MULTI_CURVE,
+        WEIGHTED_LOG_REGRESSION,
+        MULTI_CURVE_LINEAR,
+        THEIL_SEN
     }
 
     public final SolverType solverType;
@@ -29,6 +32,12 @@ public class AkSolverFactory {
                 return new AkMultiCurveSolver(spreadSpecification);
             case LOG_REGRESSION:
                 return new AkRegressionSolver(spreadSpecification);
+            case WEIGHTED_LOG_REGRESSION:
+                return new AkWeightedRegressionSolver(spreadSpecification);
+            case MULTI_CURVE_LINEAR:
+                return new AkLinearMultiCurveSolver(spreadSpecification);
+            case THEIL_SEN:
+                return new AkTheilSenSolver(spreadSpecification);
             default:
                 return null;
         }
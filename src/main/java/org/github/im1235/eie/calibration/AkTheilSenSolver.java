@@ -0,0 +1,141 @@
+package org.github.im1235.eie.calibration;
+
+/**
+ * Implementation, solver of A and k
+ * performs Theil–Sen regression of log(λ) on δ, robust to outliers at individual spreads.
+ * slope = median of slopes of all pairs of points, intercept = median of log(λi) - slope * δi
+ * k = -slope
+ * A = e^intercept
+ * <p>
+ * Medians are found by quickselect in preallocated arrays, expected time is linear in number of pairs.
+ * Pairs and points with undefined (NaN) values are ignored.
+ */
+class AkTheilSenSolver extends AbstractAkSolver {
+
+    private final double[] logIntensities; // log(λi), computed once per solve and shared by slopes and residuals
+    private final double[] slopes;
+    private final double[] residuals;
+
+    /**
+     * @param spreadSpecification Array of spreads (X axis of Spread - Intensity curve)
+     */
+    AkTheilSenSolver(double[] spreadSpecification) {
+        super(spreadSpecification);
+        int n = spreadSpecification.length;
+        this.logIntensities = new double[n];
+        this.slopes = new double[n * (n - 1) / 2];
+        this.residuals = new double[n];
+    }
+
+    /**
+     * @param intensities Array of intensities (Y axis of Spread - Intensity curve)
+     * @param ak          output, estimated A and k [A, k]
+     */
+    @Override
+    void solveAk(double[] intensities, double[] ak) {
+        int n = super.spreadSpecification.length;
+        double[] y = this.logIntensities;
+        for (int i = 0; i < n; i++) {
+            y[i] = Math.log(intensities[i]);
+        }
+        int nSlopes = 0;
+        for (int i = 0; i < n - 1; i++) {
+            double yi = y[i];
+            for (int j = i + 1; j < n; j++) {
+                double slope = (y[j] - yi) / (super.spreadSpecification[j] - super.spreadSpecification[i]);
+                if (!Double.isNaN(slope)) {
+                    this.slopes[nSlopes++] = slope;
+                }
+            }
+        }
+        double slope = median(this.slopes, nSlopes);
+        int nResiduals = 0;
+        for (int i = 0; i < n; i++) {
+            double residual = y[i] - slope * super.spreadSpecification[i];
+            if (!Double.isNaN(residual)) {
+                this.residuals[nResiduals++] = residual;
+            }
+        }
+        ak[0] = Math.exp(median(this.residuals, nResiduals));
+        ak[1] = -slope;
+    }
+
+
+    /**
+     * Reorders first n values
+     *
+     * @param values values without NaN
+     * @param n      number of values
+     * @return median of first n values, NaN if n is 0
+     */
+    static double median(double[] values, int n) {
+        if (n == 0) {
+            return Double.NaN;
+        }
+        double m = select(values, n, (n - 1) / 2);
+        if (n % 2 == 1) {
+            return m;
+        }
+        // values after selected element are greater or equal, upper middle is their minimum
+        double upper = values[n / 2];
+        for (int i = n / 2 + 1; i < n; i++) {
+            upper = Math.min(upper, values[i]);
+        }
+        return (m + upper) / 2;
+    }
+
+
+    /**
+     * Hoare quickselect with median of three pivot, partially orders first n values around k-th smallest
+     *
+     * @param values values without NaN
+     * @param n      number of values
+     * @param k      index of value in sorted order
+     * @return k-th smallest value
+     */
+    private static double select(double[] values, int n, int k) {
+        int lo = 0;
+        int hi = n - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] < values[lo]) {
+                swap(values, lo, mid);
+            }
+            if (values[hi] < values[lo]) {
+                swap(values, lo, hi);
+            }
+            if (values[hi] < values[mid]) {
+                swap(values, mid, hi);
+            }
+            double pivot = values[mid];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(values, i++, j--);
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return values[k];
+            }
+        }
+        return values[k];
+    }
+
+    private static void swap(double[] values, int i, int j) {
+        double v = values[i];
+        values[i] = values[j];
+        values[j] = v;
+    }
+
+}
@@ -0,0 +1,72 @@
+package org.github.im1235.eie.calibration;
+
+/**
+ * Implementation, solver of A and k
+ * performs weighted least squares regression of log(λ) on δ, each spread is weighted by its number of fills.
+ * Variance of log(λ) estimate is roughly inverse to number of fills, so sparsely filled wide spreads
+ * have less influence. Spreads without fills are ignored.
+ * k = -slope
+ * A = e^intercept
+ */
+class AkWeightedRegressionSolver extends AbstractAkSolver {
+
+    /**
+     * @param spreadSpecification Array of spreads (X axis of Spread - Intensity curve)
+     */
+    AkWeightedRegressionSolver(double[] spreadSpecification) {
+        super(spreadSpecification);
+    }
+
+    /**
+     * Without fill counts all spreads have equal weight
+     *
+     * @param intensities Array of intensities (Y axis of Spread - Intensity curve)
+     * @param ak          output, estimated A and k [A, k]
+     */
+    @Override
+    void solveAk(double[] intensities, double[] ak) {
+        solveAk(intensities, null, ak);
+    }
+
+    /**
+     * @param intensities Array of intensities (Y axis of Spread - Intensity curve)
+     * @param fillCounts  number of fills in evaluation window at each spread, weights of spreads
+     * @param ak          output, estimated A and k [A, k]
+     */
+    @Override
+    void solveAk(double[] intensities, double[] fillCounts, double[] ak) {
+        int n = super.spreadSpecification.length;
+        double sw = 0;
+        double swx = 0;
+        for (int i = 0; i < n; i++) {
+            double w = fillCounts == null ? 1 : fillCounts[i];
+            if (w > 0) {
+                sw += w;
+                swx += w * super.spreadSpecification[i];
+            }
+        }
+        double meanX = swx / sw;
+        double swy = 0;
+        double sxx = 0;
+        double sxy = 0;
+        for (int i = 0; i < n; i++) {
+            double w = fillCounts == null ? 1 : fillCounts[i];
+            if (w > 0) {
+                double y = Math.log(intensities[i]);
+                double dx = super.spreadSpecification[i] - meanX;
+                swy += w * y;
+                sxx += w * dx * dx;
+                sxy += w * dx * y;
+            }
+        }
+        double slope = sxy / sxx;
+        ak[0] = Math.exp(swy / sw - slope * meanX);
+        ak[1] = -slope;
+    }
+
+    @Override
+    boolean usesFillCounts() {
+        return true;
+    }
+
+}
@@ -0,0 +1,280 @@
+package org.github.im1235.eie.calibration;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Estimates order execution intensity for provided distances from mid price (spreads) with exponentially decayed
+ * fills and waiting times, half-life of decay is w
+ * <p>
+ * Fill at time t and waiting time at time t are weighted by e^(α (t - referenceTs)), α = ln(2) / w.
+ * λ = dt * decayed fills / decayed waiting time, common factor e^(α (ts - referenceTs)) cancels out, so sums are
+ * updated only on fills and no per level decay is needed on ticks. Waiting time of tracker from start s until t
+ * is (e^(α (t - referenceTs)) - e^(α (s - referenceTs))) / α, so live trackers are aggregated same way as
+ * in {@link EmpiricalIntensityEstimator} with time stamps replaced by weights.
+ * <p>
+ * Trackers filled at all levels are dropped from the tracker store at fill, per level state are sums of weights,
+ * so memory is bounded by number of unfilled trackers. Trackers not filled within w are censored, their waiting time
+ * until start + w is kept and no fill is counted.
+ */
+class DecayedIntensityEstimator extends AbstractIntensityEstimator {
+
+    private static final int RESCALE_HALF_LIVES = 64; // referenceTs is moved once weights reach 2^64
+
+    private final long halfLife;
+    private final double alpha;
+    private boolean started = false;
+    private long referenceTs;
+    private long weightTs = Long.MIN_VALUE; // time stamp of cached weight
+    private double weight;
+    private double estimateWeight = 1; // weight at the last estimate
+
+    /**
+     * e^(α (start - referenceTs)), weight of tracker start time
+     */
+    private double[] trackerWeight = new double[INITIAL_CAPACITY];
+
+    /**
+     * number of live trackers and sum of their start weights, grouped by trackerLevel
+     * tracker is live at spread level i if its trackerLevel is less than or equal to i
+     */
+    private final int[] liveTrackersCountByLevel;
+    private final double[] liveTrackersWeightSumByLevel;
+    /**
+     * waiting time of censored trackers, grouped by trackerLevel at censoring
+     */
+    private final double[] censoredWaitTimeByLevel;
+
+    /**
+     * decayed fill count and waiting time of fills for each spread level
+     */
+    private final double[] fillWeightSum;
+    private final double[] finishedWaitTimeSum;
+
+
+    /**
+     * @param spreads         distances from mid price, use negative sign for buy limit and positive for sell limit,
+     *                        ordered from closest to widest
+     * @param spreadDirection -1 for sell limit orders, 1 for buy limit
+     * @param dt
+     * @param halfLife        half-life of fills and waiting times, trackers are censored after halfLife
+     */
+    DecayedIntensityEstimator(double[] spreads, double spreadDirection, long dt, long halfLife) {
+        this(spreads, spreadDirection, dt, halfLife, 0);
+    }
+
+
+    /**
+     * @param spreads         distances from mid price, use negative sign for buy limit and positive for sell limit,
+     *                        ordered from closest to widest
+     * @param spreadDirection -1 for sell limit orders, 1 for buy limit
+     * @param dt
+     * @param halfLife        half-life of fills and waiting times, trackers are censored after halfLife
+     * @param tickSize        prices are fixed point half ticks if positive
+     */
+    DecayedIntensityEstimator(double[] spreads, double spreadDirection, long dt, long halfLife, double tickSize) {
+        super(spreads, spreadDirection, dt, tickSize);
+        this.halfLife = halfLife;
+        this.alpha = Math.log(2) / halfLife;
+        this.liveTrackersCountByLevel = new int[this.nSpreads];
+        this.liveTrackersWeightSumByLevel = new double[this.nSpreads];
+        this.censoredWaitTimeByLevel = new double[this.nSpreads];
+        this.fillWeightSum = new double[this.nSpreads];
+        this.finishedWaitTimeSum = new double[this.nSpreads];
+    }
+
+
+    @Override
+    void onTickStarted(long ts) {
+        rescale(ts);
+    }
+
+
+    /**
+     * @param ts          current time stamp
+     * @param windowStart trackers started before are censored, expected to be ts - half-life
+     * @param intensities output, estimate of lambda (intensity) for each spread
+     */
+    @Override
+    void estimateIntensities(long ts, long windowStart, double[] intensities) {
+        rescale(ts);
+        removeExpiredTrackers(windowStart);
+
+        double now = weight(ts);
+        this.estimateWeight = now;
+        int liveCount = 0;
+        double liveWeightSum = 0;
+        double censoredWaitTime = 0;
+        for (int i = 0; i < this.nSpreads; i++) {
+            liveCount += this.liveTrackersCountByLevel[i];
+            liveWeightSum += this.liveTrackersWeightSumByLevel[i];
+            censoredWaitTime += this.censoredWaitTimeByLevel[i];
+            intensities[i] = this.dt * this.alpha * this.fillWeightSum[i] /
+                    (liveCount * now - liveWeightSum + censoredWaitTime + this.finishedWaitTimeSum[i]);
+        }
+    }
+
+
+    /**
+     * @param fillCounts output, decayed number of fills at the time of the last estimate
+     */
+    @Override
+    void getFillCounts(double[] fillCounts) {
+        for (int i = 0; i < this.nSpreads; i++) {
+            fillCounts[i] = this.fillWeightSum[i] / this.estimateWeight;
+        }
+    }
+
+
+    @Override
+    void getLiveTrackerCounts(int[] liveCounts) {
+        int liveCount = 0;
+        for (int i = 0; i < this.nSpreads; i++) {
+            liveCount += this.liveTrackersCountByLevel[i];
+            liveCounts[i] = liveCount;
+        }
+    }
+
+
+    @Override
+    void onTrackerAdded(int slot) {
+        double w = weight(this.trackerStartTs[slot]);
+        this.trackerWeight[slot] = w;
+        this.liveTrackersCountByLevel[0]++;
+        this.liveTrackersWeightSumByLevel[0] += w;
+    }
+
+
+    @Override
+    void onTrackerFilled(int slot, int fromLevel, int toLevel, long ts) {
+        double startWeight = this.trackerWeight[slot];
+        double fillWeight = weight(ts);
+        this.liveTrackersCountByLevel[fromLevel]--;
+        this.liveTrackersWeightSumByLevel[fromLevel] -= startWeight;
+        for (int level = fromLevel; level < toLevel; level++) {
+            this.fillWeightSum[level] += fillWeight;
+            this.finishedWaitTimeSum[level] += fillWeight - startWeight;
+        }
+        if (toLevel < this.nSpreads) {
+            this.liveTrackersCountByLevel[toLevel]++;
+            this.liveTrackersWeightSumByLevel[toLevel] += startWeight;
+        }
+    }
+
+
+    @Override
+    void onTrackerExpired(int slot) {
+        int level = this.trackerLevel[slot];
+        if (level < this.nSpreads) {
+            double startWeight = this.trackerWeight[slot];
+            this.liveTrackersCountByLevel[level]--;
+            this.liveTrackersWeightSumByLevel[level] -= startWeight;
+            // waiting time until start + half-life, e^(α halfLife) = 2
+            this.censoredWaitTimeByLevel[level] += startWeight;
+        }
+    }
+
+
+    @Override
+    void onTrackersGrown(int newCapacity) {
+        this.trackerWeight = grow(this.trackerWeight, newCapacity);
+    }
+
+
+    @Override
+    boolean keepsFilledTrackers() {
+        return false;
+    }
+
+
+    @Override
+    int aggregateStateSize() {
+        return 1 + 8 + 1 + 8 + 8 + this.trackersCount * 8 + this.nSpreads * (4 + 8 + 8 + 8 + 8);
+    }
+
+
+    @Override
+    void writeAggregateState(ByteBuffer buffer) {
+        buffer.put((byte) WindowType.EXPONENTIAL_DECAY.ordinal()).putLong(this.halfLife)
+                .put((byte) (this.started ? 1 : 0)).putLong(this.referenceTs).putDouble(this.estimateWeight);
+        for (int slot = this.trackersHead; slot >= 0; slot = this.trackerNext[slot]) {
+            buffer.putDouble(this.trackerWeight[slot]);
+        }
+        for (int i = 0; i < this.nSpreads; i++) {
+            buffer.putInt(this.liveTrackersCountByLevel[i]).putDouble(this.liveTrackersWeightSumByLevel[i])
+                    .putDouble(this.censoredWaitTimeByLevel[i])
+                    .putDouble(this.fillWeightSum[i]).putDouble(this.finishedWaitTimeSum[i]);
+        }
+    }
+
+
+    @Override
+    AbstractIntensityEstimator emptyCopy() {
+        return new DecayedIntensityEstimator(this.spreads, this.fillDirection, this.dt, this.halfLife, this.tickSize);
+    }
+
+
+    @Override
+    void readAggregateState(ByteBuffer buffer, int capacity) {
+        if (buffer.get() != WindowType.EXPONENTIAL_DECAY.ordinal() || buffer.getLong() != this.halfLife) {
+            throw new IllegalArgumentException("state was written by estimator with different window type or half-life");
+        }
+        this.started = buffer.get() != 0;
+        this.referenceTs = buffer.getLong();
+        this.estimateWeight = buffer.getDouble();
+        this.weightTs = Long.MIN_VALUE;
+        this.trackerWeight = new double[capacity];
+        for (int slot = 0; slot < this.trackersCount; slot++) {
+            this.trackerWeight[slot] = buffer.getDouble();
+        }
+        for (int i = 0; i < this.nSpreads; i++) {
+            this.liveTrackersCountByLevel[i] = buffer.getInt();
+            this.liveTrackersWeightSumByLevel[i] = buffer.getDouble();
+            this.censoredWaitTimeByLevel[i] = buffer.getDouble();
+            this.fillWeightSum[i] = buffer.getDouble();
+            this.finishedWaitTimeSum[i] = buffer.getDouble();
+        }
+    }
+
+
+    private double weight(long ts) {
+        if (ts != this.weightTs) {
+            this.weightTs = ts;
+            this.weight = Math.exp(this.alpha * (ts - this.referenceTs));
+        }
+        return this.weight;
+    }
+
+
+    /**
+     * Moves referenceTs by RESCALE_HALF_LIVES half-lives while weights would exceed 2^RESCALE_HALF_LIVES,
+     * all weights are scaled by exact power of 2
+     *
+     * @param ts current time stamp
+     */
+    private void rescale(long ts) {
+        if (!this.started) {
+            this.started = true;
+            this.referenceTs = ts;
+            return;
+        }
+        long span = RESCALE_HALF_LIVES * this.halfLife;
+        while (ts - this.referenceTs > span) {
+            this.referenceTs += span;
+            this.weightTs = Long.MIN_VALUE;
+            scale(this.liveTrackersWeightSumByLevel);
+            scale(this.censoredWaitTimeByLevel);
+            scale(this.fillWeightSum);
+            scale(this.finishedWaitTimeSum);
+            for (int slot = this.trackersHead; slot >= 0; slot = this.trackerNext[slot]) {
+                this.trackerWeight[slot] = Math.scalb(this.trackerWeight[slot], -RESCALE_HALF_LIVES);
+            }
+        }
+    }
+
+    private static void scale(double[] values) {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Math.scalb(values[i], -RESCALE_HALF_LIVES);
+        }
+    }
+
+}
@@ -1,200 +1,210 @@
 package org.github.im1235.eie.calibration;
 
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.ListIterator;
+import java.nio.ByteBuffer;
 
 /**
- * Estimates order execution intensity (empirical lambda) for provided distance from mid price (spread)
+ * Estimates order execution intensity (empirical lambda) for provided distances from mid price (spreads)
  * <p>
  * https://pdfs.semanticscholar.org/20e5/e8364a48ef9d4b25fbf7d6e0892bf4baa265.pdf  (section 4.4.2.)
+ * <p>
+ * Hard sliding window, fills of trackers inserted in the window are counted.
+ * Once tracker buffers reach the size of the window onTick and estimateIntensities do not allocate.
+ * <p>
+ * Finished fills are aggregated by start slot of their tracker: slot holds wait time of each filled level and number
+ * of filled levels (trackerLevel). Trackers filled at all levels are kept until they leave the window, at most
+ * w / dt slots are used, expiry drops the oldest slot and subtracts its aggregates, so memory is bounded by
+ * w / dt * nSpreads regardless of fill rate.
  */
-class EmpiricalIntensityEstimator {
+class EmpiricalIntensityEstimator extends AbstractIntensityEstimator {
 
     /**
-     * Implementation specifies fill criterion
-     * Separate implementations for buy / sell limit orders
+     * wait time until fill at each spread level, trackerWaitTime[slot * nSpreads + level], valid below trackerLevel
      */
-    private abstract class Fill {
-        /**
-         * @param filledPrice current market price at which orders are filled
-         * @param orderPrice  price of placed limit order
-         * @return true if order is filled
-         */
-        abstract boolean isOrderFilled(double filledPrice, double orderPrice);
-    }
-
+    private long[] trackerWaitTime;
 
     /**
-     * Container for limit order info
+     * number of live trackers and sum of their start timestamps, grouped by trackerLevel
+     * tracker is live at spread level i if its trackerLevel is less than or equal to i
+     * live trackers wait time = current time * live trackers count - live trackers start time sum
+     * 2DO: fix overflow of liveTrackersStartTimeSum (can cause negative λ)
      */
-    private class LimitOrderTracker {
-        public final long startTs;
-        public final double orderPrice;
+    private final int[] liveTrackersCountByLevel;
+    private final long[] liveTrackersStartTimeSumByLevel;
 
-        LimitOrderTracker(double orderPrice, long ts) {
-            this.orderPrice = orderPrice;
-            this.startTs = ts;
-        }
-    }
 
-    private final double spread;
-    private final long dt;
-    private final Fill fillComp;
-    private boolean initializing = true;
-    private double lastPrice = Double.NaN;
-    private long lastLimitOrderInserted = 0;
-
-    /**
-     * trackers of limit orders that are not filled
-     */
-    private final LinkedList<LimitOrderTracker> liveTrackers = new LinkedList<>();
     /**
-     * contains sum of start timestamps
-     * live trackers wait time = current time * liveTrackers.size() - liveTrackersStartTimeSum
-     * 2DO: fix overflow of liveTrackersStartTimeSum (can cause negative λ)
+     * finished trackers count and sum of waiting time for each spread level
      */
-    private long liveTrackersStartTimeSum = 0;
+    private final int[] finishedTrackersCount;
+    private final long[] finishedTrackersWaitTimeSum;
 
 
     /**
-     * trackers of filled orders
-     * long[] listItem= new long[]{start time, wait time}
-     */
-    private final LinkedList<long[]> finishedTrackers = new LinkedList<>();
-    /**
-     * finished trackers sum of waiting time
+     * @param spreads         distances from mid price, use negative sign for buy limit and positive for sell limit,
+     *                        ordered from closest to widest
+     * @param spreadDirection -1 for sell limit orders, 1 for buy limit
+     * @param dt
      */
-    private long finishedTrackersWaitTimeSum = 0;
+    EmpiricalIntensityEstimator(double[] spreads, double spreadDirection, long dt) {
+        this(spreads, spreadDirection, dt, 0);
+    }
 
 
     /**
-     * @param spread distance from mid price, use negative sign for buy limit and positive for sell limit
+     * @param spreads         distances from mid price, use negative sign for buy limit and positive for sell limit,
+     *                        ordered from closest to widest
      * @param spreadDirection -1 for sell limit orders, 1 for buy limit
      * @param dt
+     * @param tickSize        prices are fixed point half ticks if positive
      */
-    EmpiricalIntensityEstimator(double spread, double spreadDirection, long dt) {
-        this.spread = spread;
-        this.dt = dt;
-        if (spreadDirection > 0) {
-            // concrete sell limit order fill comparator
-            this.fillComp = new Fill() {
-                @Override
-                boolean isOrderFilled(double filledPrice, double orderPrice) {
-                    return filledPrice > orderPrice;
-                }
-            };
-        } else {
-            // concrete buy limit order fill comparator
-            this.fillComp = new Fill() {
-                @Override
-                boolean isOrderFilled(double filledPrice, double orderPrice) {
-                    return filledPrice < orderPrice;
-                }
-            };
-        }
+    EmpiricalIntensityEstimator(double[] spreads, double spreadDirection, long dt, double tickSize) {
+        super(spreads, spreadDirection, dt, tickSize);
+        this.trackerWaitTime = new long[INITIAL_CAPACITY * this.nSpreads];
+        this.liveTrackersCountByLevel = new int[this.nSpreads];
+        this.liveTrackersStartTimeSumByLevel = new long[this.nSpreads];
+        this.finishedTrackersCount = new int[this.nSpreads];
+        this.finishedTrackersWaitTimeSum = new long[this.nSpreads];
     }
 
 
     /**
-     * @param refPrice    reference price (mid price)
-     * @param fillPrice   current market price at which orders are filled
      * @param ts          current time stamp
      * @param windowStart start of evaluation window, older data is deleted
+     * @param intensities output, empirical estimate of lambda (intensity) for each spread
      */
-    void onTick(double refPrice, double fillPrice, long ts, long windowStart) {
-
-        if(this.initializing){
-            this.initializing = false;
-            this.lastLimitOrderInserted = ts - this.dt;
+    @Override
+    void estimateIntensities(long ts, long windowStart, double[] intensities) {
+
+        removeExpiredTrackers(windowStart);
+
+        int liveCount = 0;
+        long liveStartTimeSum = 0;
+        for (int i = 0; i < this.nSpreads; i++) {
+            liveCount += this.liveTrackersCountByLevel[i];
+            liveStartTimeSum += this.liveTrackersStartTimeSumByLevel[i];
+            intensities[i] = (double) this.dt * this.finishedTrackersCount[i] /
+                    (liveCount * ts - liveStartTimeSum + this.finishedTrackersWaitTimeSum[i]);
         }
+    }
 
-        // insert new tracker every dt
-        while (this.lastLimitOrderInserted + this.dt < ts){
-            this.lastLimitOrderInserted = this.lastLimitOrderInserted + dt;
-            // add new tracker, price is last recived price
-            this.liveTrackers.add(
-                    new LimitOrderTracker(this.lastPrice + this.spread, this.lastLimitOrderInserted)
-            );
-            //add ts to sum of start timestamps
-            this.liveTrackersStartTimeSum += lastLimitOrderInserted;
+
+    @Override
+    void getFillCounts(double[] fillCounts) {
+        for (int i = 0; i < this.nSpreads; i++) {
+            fillCounts[i] = this.finishedTrackersCount[i];
         }
+    }
+
 
-        // insert new tracker evrey dt
-        if (this.lastLimitOrderInserted + this.dt == ts){
-            this.lastLimitOrderInserted = ts;
-            // add new tracker, add ts to sum of start timestamps
-            this.liveTrackers.add(new LimitOrderTracker(refPrice + this.spread, ts));
-            this.liveTrackersStartTimeSum += ts;
+    @Override
+    void getLiveTrackerCounts(int[] liveCounts) {
+        int liveCount = 0;
+        for (int i = 0; i < this.nSpreads; i++) {
+            liveCount += this.liveTrackersCountByLevel[i];
+            liveCounts[i] = liveCount;
         }
+    }
 
-        this.lastPrice = refPrice;
 
-        ListIterator<LimitOrderTracker> iter = this.liveTrackers.listIterator();
+    @Override
+    void onTrackerAdded(int slot) {
+        this.liveTrackersCountByLevel[0]++;
+        this.liveTrackersStartTimeSumByLevel[0] += this.trackerStartTs[slot];
+    }
 
-        while (iter.hasNext()) {
-            LimitOrderTracker tr = iter.next();
 
-            // check if tracker has expired
-            if (windowStart > tr.startTs) {
-                // remove from live trackers, subtract startTs
-                iter.remove();
-                this.liveTrackersStartTimeSum -= tr.startTs;
-                continue;
-            }
+    @Override
+    void onTrackerFilled(int slot, int fromLevel, int toLevel, long ts) {
+        long startTs = this.trackerStartTs[slot];
+        long duration = ts - startTs;
+        this.liveTrackersCountByLevel[fromLevel]--;
+        this.liveTrackersStartTimeSumByLevel[fromLevel] -= startTs;
+        // add to finished trackers, add duration to sum
+        int waitIdx = slot * this.nSpreads;
+        for (int level = fromLevel; level < toLevel; level++) {
+            this.trackerWaitTime[waitIdx + level] = duration;
+            this.finishedTrackersCount[level]++;
+            this.finishedTrackersWaitTimeSum[level] += duration;
+        }
+        if (toLevel < this.nSpreads) {
+            this.liveTrackersCountByLevel[toLevel]++;
+            this.liveTrackersStartTimeSumByLevel[toLevel] += startTs;
+        }
+    }
 
-            // check if tracker is  done (order filled)
-            if (this.fillComp.isOrderFilled(fillPrice, tr.orderPrice)) {
-                // remove from live trackers, subtract startTs
-                iter.remove();
-                this.liveTrackersStartTimeSum -= tr.startTs;
 
-                long duration = ts - tr.startTs;
-                // add to finished trackers, add duration to sum
-                this.finishedTrackers.add(new long[]{tr.startTs, duration});
-                this.finishedTrackersWaitTimeSum += duration;
-            }
+    @Override
+    void onTrackerExpired(int slot) {
+        int level = this.trackerLevel[slot];
+        // remove durations of filled levels from sums of waiting times
+        int waitIdx = slot * this.nSpreads;
+        for (int i = 0; i < level; i++) {
+            this.finishedTrackersCount[i]--;
+            this.finishedTrackersWaitTimeSum[i] -= this.trackerWaitTime[waitIdx + i];
+        }
+        if (level < this.nSpreads) {
+            // tracker is still live, subtract startTs
+            this.liveTrackersCountByLevel[level]--;
+            this.liveTrackersStartTimeSumByLevel[level] -= this.trackerStartTs[slot];
         }
     }
 
 
-    /**
-     * @param ts          current time stamp
-     * @param windowStart start of evaluation window, older data is deleted
-     * @return empirical estimate of lambda (intensity)
-     */
-    double estimateIntensity(long ts, long windowStart) {
-
-        // iterate over finished order trackers
-        Iterator<long[]> iterDone = this.finishedTrackers.listIterator();
-        while (iterDone.hasNext()) {
-            long[] tr = iterDone.next();
-            if (tr[0] < windowStart) {
-                // remove if tracker is older than windowStart
-                iterDone.remove();
-                // remove duration from sum of waiting times
-                finishedTrackersWaitTimeSum -= tr[1];
-            }
+    @Override
+    void onTrackersGrown(int newCapacity) {
+        this.trackerWaitTime = grow(this.trackerWaitTime, this.nSpreads, newCapacity);
+    }
+
+
+    @Override
+    int aggregateStateSize() {
+        int size = 1 + this.nSpreads * (4 + 8 + 4 + 8);
+        for (int slot = this.trackersHead; slot >= 0; slot = this.trackerNext[slot]) {
+            size += 8 * this.trackerLevel[slot];
         }
+        return size;
+    }
+
 
-        // check if time passed from last tick
-        if (!this.liveTrackers.isEmpty() && ts != this.liveTrackers.getLast().startTs) {
-            // iterate over unfinished order trackers
-            ListIterator<LimitOrderTracker> iterLive = this.liveTrackers.listIterator();
-            while (iterLive.hasNext()) {
-                LimitOrderTracker tr = iterLive.next();
-                if (windowStart > tr.startTs) {
-                    // remove if tracker is older than windowStart
-                    iterLive.remove();
-                    // remove duration from sum of waiting times
-                    liveTrackersStartTimeSum -= tr.startTs;
-                }
+    @Override
+    void writeAggregateState(ByteBuffer buffer) {
+        buffer.put((byte) WindowType.SLIDING.ordinal());
+        // wait times of filled levels only
+        for (int slot = this.trackersHead; slot >= 0; slot = this.trackerNext[slot]) {
+            for (int level = 0; level < this.trackerLevel[slot]; level++) {
+                buffer.putLong(this.trackerWaitTime[slot * this.nSpreads + level]);
             }
         }
+        for (int i = 0; i < this.nSpreads; i++) {
+            buffer.putInt(this.liveTrackersCountByLevel[i]).putLong(this.liveTrackersStartTimeSumByLevel[i])
+                    .putInt(this.finishedTrackersCount[i]).putLong(this.finishedTrackersWaitTimeSum[i]);
+        }
+    }
+
+
+    @Override
+    AbstractIntensityEstimator emptyCopy() {
+        return new EmpiricalIntensityEstimator(this.spreads, this.fillDirection, this.dt, this.tickSize);
+    }
 
-        return (double) this.dt * this.finishedTrackers.size() /
-                (liveTrackers.size() * ts - liveTrackersStartTimeSum + finishedTrackersWaitTimeSum);
 
+    @Override
+    void readAggregateState(ByteBuffer buffer, int capacity) {
+        if (buffer.get() != WindowType.SLIDING.ordinal()) {
+            throw new IllegalArgumentException("state was written by estimator with different window type");
+        }
+        this.trackerWaitTime = new long[capacity * this.nSpreads];
+        for (int slot = 0; slot < this.trackersCount; slot++) {
+            for (int level = 0; level < this.trackerLevel[slot]; level++) {
+                this.trackerWaitTime[slot * this.nSpreads + level] = buffer.getLong();
+            }
+        }
+        for (int i = 0; i < this.nSpreads; i++) {
+            this.liveTrackersCountByLevel[i] = buffer.getInt();
+            this.liveTrackersStartTimeSumByLevel[i] = buffer.getLong();
+            this.finishedTrackersCount[i] = buffer.getInt();
+            this.finishedTrackersWaitTimeSum[i] = buffer.getLong();
+        }
     }
 
-}
\ No newline at end of file
+}
@@ -1,13 +1,14 @@
 package org.github.im1235.eie.calibration;
 
 import org.github.im1235.eie.EstimationExecutor;
+import org.github.im1235.eie.EstimatorMetrics;
+import org.github.im1235.eie.events.SolverInvokedEvent;
 
-import java.util.Arrays;
-import java.util.List;
+import java.nio.ByteBuffer;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Builds Spread δ (X) - Intensity λ (Y) curve.
@@ -15,9 +16,14 @@ import java.util.stream.IntStream;
  */
 public class SpreadIntensityCurve {
 
-    private final EmpiricalIntensityEstimator[] intensityEstimators; // λ estimator for each of nSpreads
+    private AbstractIntensityEstimator intensityEstimator; // λ estimator shared by all of nSpreads, replaced by restoreState
     private double[] intensityEstimates; // estimated intensities
+    private final double[] fillCounts; // number of fills at each spread, used by weighted solvers
     private final AbstractAkSolver akSolver; // Solves for A and k based on estimated intensities
+    private final boolean fillAtBid; // sell limit orders are filled by bid, buy limit orders by ask
+    private final ExecutorService executor; // runs async tasks, global EstimationExecutor if null
+    private EstimatorMetrics metrics = null; // null if metrics are disabled
+    private final SolverInvokedEvent solverEvent = new SolverInvokedEvent(); // reused like intensityEstimates, guarded by curve lock
 
 
     /**
@@ -27,15 +33,62 @@ public class SpreadIntensityCurve {
      * @param solverFactory Ak estimator factory
      */
     public SpreadIntensityCurve(double spreadStep, int nSpreads, long dt, AkSolverFactory solverFactory) {
+        this(spreadStep, nSpreads, dt, solverFactory, null);
+    }
+
+
+    /**
+     * @param spreadStep    smallest spread used in estimates, negative for buy and positive for sell limit orders
+     * @param nSpreads      number of spreads to test, spreads are multiples of (1,2,..nSpreads) * spreadStep
+     * @param dt
+     * @param solverFactory Ak estimator factory
+     * @param executor      executor of async tasks, global {@link EstimationExecutor} is used if null
+     */
+    public SpreadIntensityCurve(double spreadStep, int nSpreads, long dt, AkSolverFactory solverFactory, ExecutorService executor) {
+        this(spreadStep, nSpreads, dt, solverFactory, executor, WindowType.SLIDING, 0);
+    }
+
+
+    /**
+     * @param spreadStep    smallest spread used in estimates, negative for buy and positive for sell limit orders
+     * @param nSpreads      number of spreads to test, spreads are multiples of (1,2,..nSpreads) * spreadStep
+     * @param dt
+     * @param solverFactory Ak estimator factory
+     * @param executor      executor of async tasks, global {@link EstimationExecutor} is used if null
+     * @param windowType    aggregation of fills and waiting times
+     * @param w             half-life of {@link WindowType#EXPONENTIAL_DECAY}, sliding window width is passed on ticks
+     */
+    public SpreadIntensityCurve(double spreadStep, int nSpreads, long dt, AkSolverFactory solverFactory, ExecutorService executor,
+                                WindowType windowType, long w) {
+        this(spreadStep, nSpreads, dt, solverFactory, executor, windowType, w, 0);
+    }
+
+
+    /**
+     * @param spreadStep    smallest spread used in estimates, negative for buy and positive for sell limit orders
+     * @param nSpreads      number of spreads to test, spreads are multiples of (1,2,..nSpreads) * spreadStep
+     * @param dt
+     * @param solverFactory Ak estimator factory
+     * @param executor      executor of async tasks, global {@link EstimationExecutor} is used if null
+     * @param windowType    aggregation of fills and waiting times
+     * @param w             half-life of {@link WindowType#EXPONENTIAL_DECAY}, sliding window width is passed on ticks
+     * @param tickSize      if positive, prices are stored as fixed point half ticks and spreadStep must be multiple of
+     *                      half tick, see {@link #onTickHalfTicks}
+     */
+    public SpreadIntensityCurve(double spreadStep, int nSpreads, long dt, AkSolverFactory solverFactory, ExecutorService executor,
+                                WindowType windowType, long w, double tickSize) {
 
-        this.intensityEstimators = new EmpiricalIntensityEstimator[nSpreads];
         double[] spreadSpecification = new double[nSpreads];
-        this.intensityEstimates = new double[this.intensityEstimators.length];
-        IntStream.range(0, nSpreads).forEach(i -> {
+        this.intensityEstimates = new double[nSpreads];
+        this.fillCounts = new double[nSpreads];
+        for (int i = 0; i < nSpreads; i++) {
             spreadSpecification[i] = i * spreadStep;
-            this.intensityEstimators[i] = new EmpiricalIntensityEstimator(spreadSpecification[i], Math.signum(spreadStep), dt);
-        });
+        }
+        this.intensityEstimator = AbstractIntensityEstimator.create(spreadSpecification, Math.signum(spreadStep), dt, windowType, w,
+                tickSize);
         this.akSolver = solverFactory.getSolver(spreadSpecification);
+        this.fillAtBid = spreadStep > 0;
+        this.executor = executor;
 
     }
 
@@ -47,7 +100,168 @@ public class SpreadIntensityCurve {
      * @param windowStart start of evaluation window, older data is deleted
      */
     public synchronized void onTick(double refPrice, double fillPrice, long ts, long windowStart) {
-        Arrays.stream(this.intensityEstimators).forEach(ie -> ie.onTick(refPrice, fillPrice, ts, windowStart));
+        this.intensityEstimator.onTick(refPrice, fillPrice, ts, windowStart);
+    }
+
+
+    /**
+     * Fixed point implementation of {@link #onTick}, curve must be created with tick size
+     * Half ticks represent mid prices exactly, e.g. reference price is bidTicks + askTicks and fill price 2 * bidTicks
+     *
+     * @param refHalfTicks  reference price (mid price) in half ticks
+     * @param fillHalfTicks price at which all orders have been fully filled in half ticks
+     * @param ts            current time stamp
+     * @param windowStart   start of evaluation window, older data is deleted
+     */
+    public synchronized void onTickHalfTicks(long refHalfTicks, long fillHalfTicks, long ts, long windowStart) {
+        this.intensityEstimator.onTickHalfTicks(refHalfTicks, fillHalfTicks, ts, windowStart);
+    }
+
+
+    /**
+     * Batch implementation of {@link #onTick}, processes ticks from index from (inclusive) to index to (exclusive)
+     * Reference price is mid price, fill price is bid for sell and ask for buy limit orders
+     *
+     * @param bids best market bid prices
+     * @param asks best market ask prices
+     * @param ts   time stamps
+     * @param from index of first tick
+     * @param to   index after last tick
+     * @param w    sliding window width in time units, window of each tick starts at ts - w
+     */
+    public synchronized void onTicks(double[] bids, double[] asks, long[] ts, int from, int to, long w) {
+        double[] fillPrices = this.fillAtBid ? bids : asks;
+        for (int i = from; i < to; i++) {
+            this.intensityEstimator.onTick((bids[i] + asks[i]) / 2, fillPrices[i], ts[i], ts[i] - w);
+        }
+    }
+
+
+    /**
+     * Aligns tracker insertion times to origin + k * dt, by default trackers are inserted every dt from the first tick
+     * Must be called before first tick
+     *
+     * @param origin tracker time origin
+     */
+    public synchronized void alignTrackers(long origin) {
+        this.intensityEstimator.alignTrackers(origin);
+    }
+
+
+    /**
+     * @param metrics records solver time and rejected tasks, null disables metrics
+     */
+    public synchronized void setMetrics(EstimatorMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+
+    /**
+     * @return number of trackers whose order at each spread is not filled yet
+     */
+    public synchronized int[] getLiveTrackerCounts() {
+        int[] liveCounts = new int[this.intensityEstimates.length];
+        this.intensityEstimator.getLiveTrackerCounts(liveCounts);
+        return liveCounts;
+    }
+
+
+    /**
+     * @return number of fills at each spread in the window of the last estimate, decayed for
+     * {@link WindowType#EXPONENTIAL_DECAY}
+     */
+    public synchronized double[] getFinishedTrackerCounts() {
+        double[] finishedCounts = new double[this.intensityEstimates.length];
+        this.intensityEstimator.getFillCounts(finishedCounts);
+        return finishedCounts;
+    }
+
+
+    /**
+     * @return number of order fills at all spreads since creation
+     */
+    public synchronized long getFillCount() {
+        return this.intensityEstimator.fillCount;
+    }
+
+
+    /**
+     * @return number of trackers filled or expired since creation
+     */
+    public synchronized long getScanCount() {
+        return this.intensityEstimator.scanCount;
+    }
+
+
+    /**
+     * @return number of ticks that did not insert, expire or fill any tracker and skipped the scan
+     */
+    public synchronized long getSkippedScanCount() {
+        return this.intensityEstimator.skippedScanCount;
+    }
+
+
+    /**
+     * @return number of bytes written by {@link #writeState}
+     */
+    public synchronized int stateSize() {
+        return this.intensityEstimator.stateSize();
+    }
+
+
+    /**
+     * Writes trackers, fills and waiting times, see {@link org.github.im1235.eie.IntensityEstimator#checkpoint}
+     *
+     * @param buffer little endian buffer with {@link #stateSize} bytes remaining
+     */
+    public synchronized void writeState(ByteBuffer buffer) {
+        this.intensityEstimator.writeState(buffer);
+    }
+
+
+    /**
+     * Reads trackers, fills and waiting times written by {@link #writeState}, curve is not modified
+     * until the returned state is passed to {@link #restoreState}
+     *
+     * @param buffer little endian buffer
+     * @return state that can replace state of this curve
+     * @throws IllegalArgumentException if state was written by curve with different configuration
+     */
+    public synchronized CurveState readState(ByteBuffer buffer) {
+        AbstractIntensityEstimator estimator = this.intensityEstimator.emptyCopy();
+        estimator.readState(buffer);
+        return new CurveState(this, estimator);
+    }
+
+
+    /**
+     * Replaces trackers, fills and waiting times with state read by {@link #readState}, tick counters are kept
+     *
+     * @param state state read by this curve
+     */
+    public synchronized void restoreState(CurveState state) {
+        if (state.curve != this) {
+            throw new IllegalArgumentException("state was read by different curve");
+        }
+        AbstractIntensityEstimator estimator = state.estimator;
+        estimator.fillCount = this.intensityEstimator.fillCount;
+        estimator.scanCount = this.intensityEstimator.scanCount;
+        estimator.skippedScanCount = this.intensityEstimator.skippedScanCount;
+        this.intensityEstimator = estimator;
+    }
+
+
+    /**
+     * State read by {@link #readState}, not yet applied to the curve
+     */
+    public static final class CurveState {
+        private final SpreadIntensityCurve curve;
+        private final AbstractIntensityEstimator estimator;
+
+        private CurveState(SpreadIntensityCurve curve, AbstractIntensityEstimator estimator) {
+            this.curve = curve;
+            this.estimator = estimator;
+        }
     }
 
 
@@ -62,14 +276,8 @@ public class SpreadIntensityCurve {
      */
     public synchronized Future<Void> onTickAsync(double refPrice, double fillPrice, long ts, long windowStart) {
 
-        return EstimationExecutor.submit(() -> {
-            List<Callable<Void>> tickTasks = Arrays.stream(this.intensityEstimators)
-                    .map(ie -> (Callable<Void>) () -> {
-                        ie.onTick(refPrice, fillPrice, ts, windowStart);
-                        return null;
-                    })
-                    .collect(Collectors.toList());
-            EstimationExecutor.invokeAll(tickTasks);
+        return submit(() -> {
+            this.intensityEstimator.onTick(refPrice, fillPrice, ts, windowStart);
             return null;
         });
     }
@@ -81,11 +289,21 @@ public class SpreadIntensityCurve {
      * @return double[]{A, k} , estimate of A and k
      */
     public synchronized double[] estimateAk(long ts, long windowStart) {
-        IntStream.range(0, this.intensityEstimators.length)
-                .forEach(i -> {
-                    intensityEstimates[i] = this.intensityEstimators[i].estimateIntensity(ts, windowStart);
-                });
-        return this.akSolver.solveAk(intensityEstimates);
+        double[] ak = new double[2];
+        solveAk(ts, windowStart, ak);
+        return ak;
+    }
+
+
+    /**
+     * Allocation free implementation of {@link #estimateAk(long, long)}
+     *
+     * @param ts          current time stamp
+     * @param windowStart start of evaluation window, older data is deleted
+     * @param ak          output, estimate of A and k [A, k]
+     */
+    public synchronized void estimateAk(long ts, long windowStart, double[] ak) {
+        solveAk(ts, windowStart, ak);
     }
 
 
@@ -97,17 +315,52 @@ public class SpreadIntensityCurve {
      * @return
      */
     public synchronized Future<double[]> estimateAkAsync(long ts, long windowStart) {
-        return EstimationExecutor.submit(() -> {
-                    List<Callable<Void>> estimateTasks = IntStream.range(0, this.intensityEstimators.length)
-                            .mapToObj(i -> (Callable<Void>) () -> {
-                                intensityEstimates[i] = this.intensityEstimators[i].estimateIntensity(ts, windowStart);
-                                return null;
-                            })
-                            .collect(Collectors.toList());
-                    EstimationExecutor.invokeAll(estimateTasks);
-                    return this.akSolver.solveAk(intensityEstimates);
+        return submit(() -> {
+                    double[] ak = new double[2];
+                    // task runs after this method returns, estimate buffers and solver event are guarded by curve lock
+                    synchronized (this) {
+                        solveAk(ts, windowStart, ak);
+                    }
+                    return ak;
                 }
         );
     }
 
+
+    private void solveAk(long ts, long windowStart, double[] ak) {
+        this.intensityEstimator.estimateIntensities(ts, windowStart, this.intensityEstimates);
+        if (this.akSolver.usesFillCounts()) {
+            this.intensityEstimator.getFillCounts(this.fillCounts);
+        }
+        SolverInvokedEvent event = this.solverEvent;
+        event.begin();
+        if (this.metrics != null) {
+            long start = System.nanoTime();
+            this.akSolver.solveAk(this.intensityEstimates, this.fillCounts, ak);
+            this.metrics.onSolve(System.nanoTime() - start);
+        } else {
+            this.akSolver.solveAk(this.intensityEstimates, this.fillCounts, ak);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.solver = this.akSolver.getClass().getSimpleName();
+            event.nSpreads = this.intensityEstimates.length;
+            event.a = ak[0];
+            event.k = ak[1];
+            event.commit();
+        }
+    }
+
+
+    private <T> Future<T> submit(Callable<T> task) {
+        try {
+            return EstimationExecutor.submit(this.executor, task);
+        } catch (RejectedExecutionException e) {
+            if (this.metrics != null) {
+                this.metrics.onRejected();
+            }
+            throw e;
+        }
+    }
+
 }
@@ -0,0 +1,107 @@
+package org.github.im1235.eie.calibration;
+
+/**
+ * Spread intensity curves with the same spread step and dt sharing single intensity estimator
+ * <p>
+ * Fills at spread level i do not depend on wider spreads, so curve with n spreads uses first n intensities
+ * of estimator built for the largest number of spreads. Estimates are identical to separate {@link SpreadIntensityCurve}s.
+ */
+public class SpreadIntensityCurveSet {
+
+    private final EmpiricalIntensityEstimator intensityEstimator; // λ estimator shared by all curves
+    private final double[] intensityEstimates; // estimated intensities at all spreads
+    private final double[][] curveIntensities; // first nSpreads intensities of each curve
+    private final double[] fillCounts; // number of fills at all spreads, used by weighted solvers
+    private final boolean usesFillCounts;
+    private final AbstractAkSolver[] akSolvers;
+    private final boolean fillAtBid; // sell limit orders are filled by bid, buy limit orders by ask
+
+
+    /**
+     * @param spreadStep      smallest spread used in estimates, negative for buy and positive for sell limit orders
+     * @param nSpreads        number of spreads of each curve
+     * @param solverFactories Ak solver factory of each curve
+     * @param dt
+     */
+    public SpreadIntensityCurveSet(double spreadStep, int[] nSpreads, AkSolverFactory[] solverFactories, long dt) {
+        if (nSpreads.length != solverFactories.length) {
+            throw new IllegalArgumentException("number of spreads and solver factory must be specified for each curve");
+        }
+        int maxSpreads = 0;
+        for (int n : nSpreads) {
+            maxSpreads = Math.max(maxSpreads, n);
+        }
+        double[] spreadSpecification = new double[maxSpreads];
+        for (int i = 0; i < maxSpreads; i++) {
+            spreadSpecification[i] = i * spreadStep;
+        }
+        this.intensityEstimator = new EmpiricalIntensityEstimator(spreadSpecification, Math.signum(spreadStep), dt);
+        this.intensityEstimates = new double[maxSpreads];
+        this.curveIntensities = new double[nSpreads.length][];
+        this.fillCounts = new double[maxSpreads];
+        this.akSolvers = new AbstractAkSolver[nSpreads.length];
+        boolean usesFillCounts = false;
+        for (int c = 0; c < nSpreads.length; c++) {
+            double[] curveSpreads = new double[nSpreads[c]];
+            System.arraycopy(spreadSpecification, 0, curveSpreads, 0, nSpreads[c]);
+            this.curveIntensities[c] = new double[nSpreads[c]];
+            this.akSolvers[c] = solverFactories[c].getSolver(curveSpreads);
+            usesFillCounts |= this.akSolvers[c].usesFillCounts();
+        }
+        this.usesFillCounts = usesFillCounts;
+        this.fillAtBid = spreadStep > 0;
+    }
+
+
+    /**
+     * @return number of curves
+     */
+    public int size() {
+        return this.akSolvers.length;
+    }
+
+
+    /**
+     * Batch update of all curves, see {@link SpreadIntensityCurve#onTicks}
+     *
+     * @param bids best market bid prices
+     * @param asks best market ask prices
+     * @param ts   time stamps
+     * @param from index of first tick
+     * @param to   index after last tick
+     * @param w    sliding window width in time units, window of each tick starts at ts - w
+     */
+    public synchronized void onTicks(double[] bids, double[] asks, long[] ts, int from, int to, long w) {
+        double[] fillPrices = this.fillAtBid ? bids : asks;
+        for (int i = from; i < to; i++) {
+            this.intensityEstimator.onTick((bids[i] + asks[i]) / 2, fillPrices[i], ts[i], ts[i] - w);
+        }
+    }
+
+
+    /**
+     * Estimates intensities once and solves A and k of each curve
+     *
+     * @param ts          current time stamp
+     * @param windowStart start of evaluation window, older data is deleted
+     * @param solveNanos  output, time spent solving A and k of each curve
+     * @return double[curve]{A, k} , estimate of A and k of each curve
+     */
+    public synchronized double[][] estimateAk(long ts, long windowStart, long[] solveNanos) {
+        this.intensityEstimator.estimateIntensities(ts, windowStart, this.intensityEstimates);
+        if (this.usesFillCounts) {
+            this.intensityEstimator.getFillCounts(this.fillCounts);
+        }
+        double[][] ak = new double[this.akSolvers.length][2];
+        for (int c = 0; c < this.akSolvers.length; c++) {
+            long start = System.nanoTime();
+            double[] intensities = this.curveIntensities[c];
+            System.arraycopy(this.intensityEstimates, 0, intensities, 0, intensities.length);
+            // solvers use first nSpreads fill counts
+            this.akSolvers[c].solveAk(intensities, this.fillCounts, ak[c]);
+            solveNanos[c] = System.nanoTime() - start;
+        }
+        return ak;
+    }
+
+}
@@ -0,0 +1,15 @@
+package org.github.im1235.eie.calibration;
+
+/**
+ * Aggregation of fills and waiting times of trackers over time
+ */
+public enum WindowType {
+    /**
+     * hard sliding window of width w, memory grows with w / dt
+     */
+    SLIDING,
+    /**
+     * fills and waiting times decay exponentially with half-life w, finished trackers are not stored
+     */
+    EXPONENTIAL_DECAY
+}
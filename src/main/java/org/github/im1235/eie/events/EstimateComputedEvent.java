@@ -0,0 +1,37 @@
+package org.github.im1235.eie.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder event of A and k estimate of {@link org.github.im1235.eie.IntensityEstimator}
+ */
+@Name("org.github.im1235.eie.EstimateComputed")
+@Label("Estimate Computed")
+@Category({"Execution Intensity Estimator"})
+@Description("A and k of buy and sell limit orders")
+@Threshold("1 ms")
+@StackTrace(false)
+public final class EstimateComputedEvent extends Event {
+
+    @Label("Instrument")
+    public String instrument;
+
+    @Label("Buy A")
+    public double buyA;
+
+    @Label("Buy k")
+    public double buyK;
+
+    @Label("Sell A")
+    public double sellA;
+
+    @Label("Sell k")
+    public double sellK;
+
+}
@@ -0,0 +1,34 @@
+package org.github.im1235.eie.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder event of A and k solver invoked by {@link org.github.im1235.eie.calibration.SpreadIntensityCurve}
+ */
+@Name("org.github.im1235.eie.SolverInvoked")
+@Label("Solver Invoked")
+@Category({"Execution Intensity Estimator"})
+@Description("A and k solved from estimated intensities of one curve")
+@Threshold("500 us")
+@StackTrace(false)
+public final class SolverInvokedEvent extends Event {
+
+    @Label("Solver")
+    public String solver;
+
+    @Label("Spreads")
+    public int nSpreads;
+
+    @Label("A")
+    public double a;
+
+    @Label("k")
+    public double k;
+
+}
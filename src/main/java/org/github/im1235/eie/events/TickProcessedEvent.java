@@ -0,0 +1,36 @@
+package org.github.im1235.eie.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder event of tick (or batch of ticks) processed by {@link org.github.im1235.eie.IntensityEstimator}
+ */
+@Name("org.github.im1235.eie.TickProcessed")
+@Label("Tick Processed")
+@Category({"Execution Intensity Estimator"})
+@Description("Ticks passed to buy and sell spread intensity curves")
+@Threshold("100 us")
+@StackTrace(false)
+public final class TickProcessedEvent extends Event {
+
+    @Label("Instrument")
+    public String instrument;
+
+    @Label("Ticks")
+    public int ticks;
+
+    @Label("Trackers Scanned")
+    @Description("Trackers filled or expired by the ticks")
+    public long trackersScanned;
+
+    @Label("Fills")
+    @Description("Order fills at all spreads of both curves")
+    public long fills;
+
+}
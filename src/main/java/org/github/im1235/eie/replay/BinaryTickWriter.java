@@ -0,0 +1,117 @@
+package org.github.im1235.eie.replay;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes ticks in compact fixed width binary format
+ * <p>
+ * File starts with {@link #HEADER_SIZE} bytes long magic header followed by {@link #RECORD_SIZE} bytes long records
+ * of double bid, double ask, long ts in little endian byte order
+ */
+public class BinaryTickWriter implements Closeable {
+
+    public static final long MAGIC = 0x314B434954454945L; // "EIETICK1" in little endian
+    public static final int HEADER_SIZE = Long.BYTES;
+    public static final int RECORD_SIZE = 2 * Double.BYTES + Long.BYTES;
+
+    private static final int BUFFER_RECORDS = 4096;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_RECORDS * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private long count = 0;
+
+    /**
+     * @param file created or truncated binary tick file
+     * @throws IOException
+     */
+    public BinaryTickWriter(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer.putLong(MAGIC);
+    }
+
+    /**
+     * @param bid best market bid price
+     * @param ask best market ask price
+     * @param ts  time stamp
+     * @throws IOException
+     */
+    public void write(double bid, double ask, long ts) throws IOException {
+        if (this.buffer.remaining() < RECORD_SIZE) {
+            flush();
+        }
+        this.buffer.putDouble(bid).putDouble(ask).putLong(ts);
+        this.count++;
+    }
+
+    /**
+     * @return number of written ticks
+     */
+    public long getCount() {
+        return this.count;
+    }
+
+    private void flush() throws IOException {
+        this.buffer.flip();
+        while (this.buffer.hasRemaining()) {
+            this.channel.write(this.buffer);
+        }
+        this.buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        this.channel.close();
+    }
+
+
+    /**
+     * Converts csv file with bid,ask,ts columns (layout of src/test/resources/tick.csv) to binary format
+     * Optional header line is detected, first line is skipped only if it does not start with a number
+     *
+     * @param csv    source csv file
+     * @param binary target binary tick file
+     * @return number of converted ticks
+     * @throws IOException
+     */
+    public static long convertCsv(Path csv, Path binary) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8);
+             BinaryTickWriter writer = new BinaryTickWriter(binary)) {
+            String line = reader.readLine();
+            if (line != null && !isNumber(line.substring(0, Math.max(0, line.indexOf(','))))) {
+                line = reader.readLine(); // skip header
+            }
+            for (; line != null; line = reader.readLine()) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                int c1 = line.indexOf(',');
+                int c2 = line.indexOf(',', c1 + 1);
+                writer.write(
+                        Double.parseDouble(line.substring(0, c1)),
+                        Double.parseDouble(line.substring(c1 + 1, c2)),
+                        Long.parseLong(line.substring(c2 + 1).trim()));
+            }
+            return writer.getCount();
+        }
+    }
+
+    private static boolean isNumber(String value) {
+        try {
+            Double.parseDouble(value);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,16 @@
+package org.github.im1235.eie.replay;
+
+/**
+ * Receives replayed ticks as primitives, e.g. IntensityEstimator::onTick
+ */
+@FunctionalInterface
+public interface TickConsumer {
+
+    /**
+     * @param bid best market bid price
+     * @param ask best market ask price
+     * @param ts  time stamp
+     */
+    void onTick(double bid, double ask, long ts);
+
+}
@@ -0,0 +1,130 @@
+package org.github.im1235.eie.replay;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Replays binary tick file written by {@link BinaryTickWriter}
+ * <p>
+ * File is memory mapped in segments aligned to record size, so files larger than 2 GB are supported.
+ * Ticks are read with absolute gets and passed to {@link TickConsumer} as primitives, no object is created per tick.
+ */
+public class TickReplay {
+
+    private static final long MAX_SEGMENT_RECORDS = Integer.MAX_VALUE / BinaryTickWriter.RECORD_SIZE;
+
+    private final Path file;
+    private final long segmentRecords;
+
+    /**
+     * @param file binary tick file
+     */
+    public TickReplay(Path file) {
+        this(file, MAX_SEGMENT_RECORDS);
+    }
+
+    /**
+     * @param file           binary tick file
+     * @param segmentRecords number of records mapped at once
+     */
+    TickReplay(Path file, long segmentRecords) {
+        this.file = file;
+        this.segmentRecords = Math.max(1, Math.min(segmentRecords, MAX_SEGMENT_RECORDS));
+    }
+
+
+    /**
+     * @return number of ticks in file
+     * @throws IOException if file is not binary tick file
+     */
+    public long count() throws IOException {
+        try (FileChannel channel = FileChannel.open(this.file, StandardOpenOption.READ)) {
+            return count(channel);
+        }
+    }
+
+
+    /**
+     * @param index index of tick
+     * @return time stamp of tick
+     * @throws IOException if file is not binary tick file or ends before the tick
+     */
+    public long timeStamp(long index) throws IOException {
+        try (FileChannel channel = FileChannel.open(this.file, StandardOpenOption.READ)) {
+            if (index < 0 || index >= count(channel)) {
+                throw new IndexOutOfBoundsException("tick " + index + " is not in " + this.file);
+            }
+            ByteBuffer ts = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            long position = BinaryTickWriter.HEADER_SIZE + index * BinaryTickWriter.RECORD_SIZE + 2 * Double.BYTES;
+            while (ts.hasRemaining()) {
+                if (channel.read(ts, position + ts.position()) < 0) {
+                    throw new EOFException(this.file + " ends before tick " + index);
+                }
+            }
+            return ts.getLong(0);
+        }
+    }
+
+
+    /**
+     * Replays all ticks
+     *
+     * @param consumer receives ticks in file order
+     * @return number of replayed ticks
+     * @throws IOException
+     */
+    public long replay(TickConsumer consumer) throws IOException {
+        return replay(consumer, 0, Long.MAX_VALUE);
+    }
+
+
+    /**
+     * Replays ticks from index from (inclusive) to index to (exclusive)
+     *
+     * @param consumer receives ticks in file order
+     * @param from     index of first tick
+     * @param to       index after last tick, truncated to number of ticks in file
+     * @return number of replayed ticks
+     * @throws IOException
+     */
+    public long replay(TickConsumer consumer, long from, long to) throws IOException {
+        try (FileChannel channel = FileChannel.open(this.file, StandardOpenOption.READ)) {
+            long end = Math.min(to, count(channel));
+            for (long segmentStart = from; segmentStart < end; segmentStart += this.segmentRecords) {
+                int records = (int) Math.min(this.segmentRecords, end - segmentStart);
+                MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY,
+                        BinaryTickWriter.HEADER_SIZE + segmentStart * BinaryTickWriter.RECORD_SIZE,
+                        (long) records * BinaryTickWriter.RECORD_SIZE);
+                segment.order(ByteOrder.LITTLE_ENDIAN);
+                int limit = records * BinaryTickWriter.RECORD_SIZE;
+                for (int pos = 0; pos < limit; pos += BinaryTickWriter.RECORD_SIZE) {
+                    consumer.onTick(
+                            segment.getDouble(pos),
+                            segment.getDouble(pos + Double.BYTES),
+                            segment.getLong(pos + 2 * Double.BYTES));
+                }
+            }
+            return Math.max(0, end - from);
+        }
+    }
+
+
+    private long count(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < BinaryTickWriter.HEADER_SIZE) {
+            throw new IOException(this.file + " is not binary tick file");
+        }
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, BinaryTickWriter.HEADER_SIZE);
+        if (header.order(ByteOrder.LITTLE_ENDIAN).getLong(0) != BinaryTickWriter.MAGIC) {
+            throw new IOException(this.file + " is not binary tick file");
+        }
+        return (size - BinaryTickWriter.HEADER_SIZE) / BinaryTickWriter.RECORD_SIZE;
+    }
+
+}
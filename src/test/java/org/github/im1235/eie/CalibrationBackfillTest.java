@@ -0,0 +1,128 @@
+package org.github.im1235.eie;
+
+import org.github.im1235.eie.calibration.AkSolverFactory;
+import org.github.im1235.eie.calibration.WindowType;
+import org.github.im1235.eie.replay.BinaryTickWriter;
+import org.github.im1235.eie.replay.TickReplay;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Compares parallel backfill of "src/test/resources/tick.csv" with serial replay
+ */
+class CalibrationBackfillTest {
+
+    public CalibrationBackfillTest() {
+    }
+
+    double spreadStep = 0.00001;
+    int nSteps = 5;
+    long w = 1000 * 60 * 10; // sliding window 10 min
+
+    @Test
+    void backfillIdentityTest() throws Exception {
+        Path binary = Files.createTempFile("tick", ".bin");
+        ExecutorService executor = EstimationExecutor.workStealing(3);
+        try {
+            BinaryTickWriter.convertCsv(Paths.get("src/test/resources/tick.csv"), binary);
+            TickReplay replay = new TickReplay(binary);
+
+            // window is multiple of dt, window is not multiple of dt
+            for (long dt : new long[]{1000 * 15, 7001}) {
+                for (AkSolverFactory.SolverType solverType : AkSolverFactory.SolverType.values()) {
+                    AkSolverFactory sf = new AkSolverFactory(solverType);
+
+                    List<IntensityInfo> expected = serialEstimates(replay,
+                            new IntensityEstimator(spreadStep, nSteps, w, dt, sf), dt);
+                    long origin = replay.timeStamp(0);
+
+                    IntensitySeries series = new CalibrationBackfill(replay,
+                            new IntensityEstimator.Builder(spreadStep, nSteps, w, dt, sf), 7).run(executor);
+
+                    assertTrue(expected.size() > 7);
+                    assertTrue(expected.stream().filter(e -> Double.isFinite(e.sellK)).count() > expected.size() / 2);
+                    assertEquals(expected.size(), series.size());
+                    for (int i = 0; i < series.size(); i++) {
+                        assertEquals(origin + (w + dt - 1) / dt * dt + i * dt, series.getTimeStamp(i));
+                        IntensityInfo e = expected.get(i);
+                        IntensityInfo a = series.get(i);
+                        assertEquals(e.buyA, a.buyA, "buyA at " + i);
+                        assertEquals(e.buyK, a.buyK, "buyK at " + i);
+                        assertEquals(e.sellA, a.sellA, "sellA at " + i);
+                        assertEquals(e.sellK, a.sellK, "sellK at " + i);
+                    }
+                }
+            }
+        } finally {
+            executor.shutdown();
+            Files.delete(binary);
+        }
+    }
+
+
+    /**
+     * Fills and waiting times of decayed estimator are not limited to window w, partitions warm up from the first tick
+     */
+    @Test
+    void backfillDecayedIdentityTest() throws Exception {
+        Path binary = Files.createTempFile("tick", ".bin");
+        ExecutorService executor = EstimationExecutor.workStealing(3);
+        try {
+            BinaryTickWriter.convertCsv(Paths.get("src/test/resources/tick.csv"), binary);
+            TickReplay replay = new TickReplay(binary);
+            long dt = 1000 * 15;
+            IntensityEstimator.Builder builder = new IntensityEstimator.Builder(spreadStep, nSteps, w, dt,
+                    new AkSolverFactory(AkSolverFactory.SolverType.LOG_REGRESSION))
+                    .windowType(WindowType.EXPONENTIAL_DECAY);
+
+            List<IntensityInfo> expected = serialEstimates(replay, builder.build(), dt);
+            IntensitySeries series = new CalibrationBackfill(replay, builder, 7).run(executor);
+
+            assertTrue(expected.stream().filter(e -> Double.isFinite(e.sellK)).count() > expected.size() / 2);
+            assertEquals(expected.size(), series.size());
+            for (int i = 0; i < series.size(); i++) {
+                IntensityInfo e = expected.get(i);
+                IntensityInfo a = series.get(i);
+                assertEquals(e.buyK, a.buyK, "buyK at " + i);
+                assertEquals(e.sellK, a.sellK, "sellK at " + i);
+            }
+        } finally {
+            executor.shutdown();
+            Files.delete(binary);
+        }
+    }
+
+
+    /**
+     * Serial reference, estimate at each dt once ticks up to that time are processed
+     */
+    private List<IntensityInfo> serialEstimates(TickReplay replay, IntensityEstimator serial, long dt) throws Exception {
+        long origin = replay.timeStamp(0);
+        long[] nextTs = {origin + (w + dt - 1) / dt * dt};
+        List<IntensityInfo> expected = new ArrayList<>();
+        replay.replay((bid, ask, ts) -> {
+            while (nextTs[0] < ts) {
+                expected.add(serial.estimate(nextTs[0]));
+                nextTs[0] += dt;
+            }
+            serial.onTick(bid, ask, ts);
+        });
+        long lastTs = replay.timeStamp(replay.count() - 1);
+        while (nextTs[0] <= lastTs) {
+            expected.add(serial.estimate(nextTs[0]));
+            nextTs[0] += dt;
+        }
+        return expected;
+    }
+
+}
@@ -0,0 +1,152 @@
+package org.github.im1235.eie;
+
+import org.github.im1235.eie.calibration.AkSolverFactory;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Tests sharded registry on historical data in "src/test/resources/tick.csv
+ */
+class IntensityEstimatorRegistryTest {
+
+    public IntensityEstimatorRegistryTest() {
+    }
+
+    /**
+     * estimator configuration
+     */
+    double spreadStep = 0.00001;
+    int nSteps = 5;
+    long w = 1000 * 60 * 10; // sliding window 10 min
+    long dt = 1000 * 15; // time scaling 15 sec
+
+    long[] instrumentIds = new long[]{7, 1001, -3}; // instruments replay same ticks with shifted prices
+
+    /**
+     * Tests if sharded estimates are same as estimates of standalone estimators
+     */
+    @Test
+    void shardedIdentityTest() throws IOException {
+
+        List<String[]> testData = Files.lines(Paths.get("src/test/resources/tick.csv"))
+                .skip(1)
+                .map(line -> line.split(","))
+                .collect(Collectors.toList());
+
+        AkSolverFactory sf = new AkSolverFactory(AkSolverFactory.SolverType.MULTI_CURVE);
+        IntensityEstimator[] standalone = new IntensityEstimator[instrumentIds.length];
+
+        try (IntensityEstimatorRegistry registry = new IntensityEstimatorRegistry(2, 64)) {
+            for (int i = 0; i < instrumentIds.length; i++) {
+                standalone[i] = new IntensityEstimator(spreadStep, nSteps, w, dt, sf);
+                registry.register(instrumentIds[i], new IntensityEstimator(spreadStep, nSteps, w, dt, sf));
+                assertNull(registry.latest(instrumentIds[i]));
+            }
+
+            long lastTs = 0;
+            for (String[] parts : testData) {
+                lastTs = Long.parseLong(parts[2]);
+                for (int i = 0; i < instrumentIds.length; i++) {
+                    double bid = Double.parseDouble(parts[0]) + i;
+                    double ask = Double.parseDouble(parts[1]) + i;
+                    standalone[i].onTick(bid, ask, lastTs);
+                    registry.onTick(instrumentIds[i], bid, ask, lastTs);
+                }
+            }
+            registry.awaitIdle();
+
+            for (int i = 0; i < instrumentIds.length; i++) {
+                IntensityInfo expected = standalone[i].estimate(lastTs);
+                IntensityInfo actual = registry.latest(instrumentIds[i]);
+                assertNotNull(actual);
+                assertEquals(expected.buyA, actual.buyA);
+                assertEquals(expected.buyK, actual.buyK);
+                assertEquals(expected.sellA, actual.sellA);
+                assertEquals(expected.sellK, actual.sellK);
+            }
+        }
+    }
+
+
+    /**
+     * Tests if instruments fed by concurrent producers of one shard get same estimates as standalone estimators
+     */
+    @Test
+    void concurrentProducersTest() throws IOException, InterruptedException {
+
+        List<String[]> testData = Files.lines(Paths.get("src/test/resources/tick.csv"))
+                .map(line -> line.split(","))
+                .collect(Collectors.toList());
+
+        AkSolverFactory sf = new AkSolverFactory(AkSolverFactory.SolverType.LOG_REGRESSION);
+        try (IntensityEstimatorRegistry registry = new IntensityEstimatorRegistry(1, 16)) {
+            Thread[] producers = new Thread[instrumentIds.length];
+            for (int i = 0; i < instrumentIds.length; i++) {
+                long instrumentId = instrumentIds[i];
+                double shift = i;
+                registry.register(instrumentId, new IntensityEstimator(spreadStep, nSteps, w, dt, sf));
+                producers[i] = new Thread(() -> {
+                    for (String[] parts : testData) {
+                        registry.onTick(instrumentId, Double.parseDouble(parts[0]) + shift,
+                                Double.parseDouble(parts[1]) + shift, Long.parseLong(parts[2]));
+                    }
+                });
+            }
+            for (Thread producer : producers) {
+                producer.start();
+            }
+            for (Thread producer : producers) {
+                producer.join();
+            }
+            registry.awaitIdle();
+
+            long lastTs = Long.parseLong(testData.get(testData.size() - 1)[2]);
+            for (int i = 0; i < instrumentIds.length; i++) {
+                IntensityEstimator standalone = new IntensityEstimator(spreadStep, nSteps, w, dt, sf);
+                for (String[] parts : testData) {
+                    standalone.onTick(Double.parseDouble(parts[0]) + i, Double.parseDouble(parts[1]) + i,
+                            Long.parseLong(parts[2]));
+                }
+                IntensityInfo expected = standalone.estimate(lastTs);
+                IntensityInfo actual = registry.latest(instrumentIds[i]);
+                assertNotNull(actual);
+                assertEquals(expected.buyK, actual.buyK);
+                assertEquals(expected.sellK, actual.sellK);
+            }
+        }
+    }
+
+
+    /**
+     * Exception thrown by estimator on shard thread is rethrown to producer
+     */
+    @Test
+    void shardFailureTest() {
+        AkSolverFactory sf = new AkSolverFactory(AkSolverFactory.SolverType.LOG_REGRESSION);
+        IntensityEstimatorRegistry registry = new IntensityEstimatorRegistry(1, 4);
+        registry.register(1, new IntensityEstimator(spreadStep, nSteps, w, dt, sf) {
+            @Override
+            public synchronized boolean onTick(double bid, double ask, long ts) {
+                throw new ArithmeticException("estimator failed");
+            }
+        });
+        registry.onTick(1, 1.0, 1.1, 0);
+        IllegalStateException e = assertThrows(IllegalStateException.class, registry::awaitIdle);
+        assertTrue(e.getCause() instanceof ArithmeticException);
+        assertThrows(IllegalStateException.class, () -> registry.onTick(1, 1.0, 1.1, 1));
+        assertThrows(IllegalStateException.class, registry::close);
+    }
+
+}
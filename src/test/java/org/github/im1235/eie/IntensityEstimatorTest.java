@@ -3,16 +3,28 @@ package org.github.im1235.eie;
 import me.tongfei.progressbar.ProgressBar;
 import org.github.im1235.eie.calibration.AkSolverFactory;
 import org.github.im1235.eie.calibration.SpreadIntensityCurve;
+import org.github.im1235.eie.calibration.WindowType;
+import org.github.im1235.eie.events.EstimateComputedEvent;
+import org.github.im1235.eie.events.SolverInvokedEvent;
+import org.github.im1235.eie.events.TickProcessedEvent;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import java.io.BufferedWriter;
 import java.io.Closeable;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.LinkedList;
 import java.util.List;
 import java.lang.reflect.Field;
@@ -20,10 +32,16 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 
@@ -173,6 +191,7 @@ class IntensityEstimatorTest {
 
 
     @Test
+    @SuppressWarnings("deprecation") // onTickAsync
     void multiThreadTest() throws IOException, IllegalAccessException, ExecutionException, InterruptedException {
 
         // configure estimators global executor
@@ -213,6 +232,7 @@ class IntensityEstimatorTest {
      * Tests if single threaded and multi threaded execution give same result
      */
     @Test
+    @SuppressWarnings("deprecation") // onTickAsync
     void identityTest() throws IOException, IllegalAccessException, ExecutionException, InterruptedException {
 
         // configure estimators global executor
@@ -246,6 +266,462 @@ class IntensityEstimatorTest {
     }
 
 
+    /**
+     * Tests if estimators with own executors give same result as single threaded execution
+     */
+    @Test
+    @SuppressWarnings("deprecation") // onTickAsync
+    void scopedExecutorIdentityTest() throws ExecutionException, InterruptedException {
+
+        List<ExecutorService> executors = new LinkedList<>();
+        executors.add(EstimationExecutor.callerRuns());
+        executors.add(EstimationExecutor.workStealing(4));
+        try {
+            executors.add(EstimationExecutor.virtualThreadPerTask());
+        } catch (UnsupportedOperationException e) {
+            // runtime older than Java 21
+        }
+
+        // create solver factory
+        AkSolverFactory sf = new AkSolverFactory(AkSolverFactory.SolverType.LOG_REGRESSION);
+        for (ExecutorService executor : executors) {
+            // create single thread intensity estimator
+            IntensityEstimator ie_s = new IntensityEstimator(spreadStep, nSteps, w, dt, sf);
+
+            // create multi thread intensity estimator with own executor
+            IntensityEstimator ie_m = new IntensityEstimator.Builder(spreadStep, nSteps, w, dt, sf)
+                    .executor(executor)
+                    .build();
+
+            for (final TickData td : this.testData) {
+                // send data to estimator
+                Future<Boolean> tickResult_m = ie_m.onTickAsync(td.b, td.a, td.ts);
+                ie_s.onTick(td.b, td.a, td.ts);
+                if (tickResult_m.get()) {
+                    IntensityInfo ii_m = ie_m.estimateAsync(td.ts).get();
+                    IntensityInfo ii_s = ie_s.estimate(td.ts);
+
+                    // assert values are correct
+                    assertEquals(ii_s.getBuyFillIntensity(testSpread), ii_m.getBuyFillIntensity(testSpread));
+                    assertEquals(ii_s.getSellFillIntensity(testSpread), ii_m.getSellFillIntensity(testSpread));
+                }
+            }
+            executor.shutdown();
+        }
+    }
+
+
+    /**
+     * Tests if batch and tick by tick processing give same result
+     */
+    @Test
+    void batchIdentityTest() {
+
+        // create solver factory
+        AkSolverFactory sf = new AkSolverFactory(AkSolverFactory.SolverType.MULTI_CURVE);
+        // create tick by tick intensity estimator
+        IntensityEstimator ie_t = new IntensityEstimator(spreadStep, nSteps, w, dt, sf);
+
+        // create batch intensity estimator
+        IntensityEstimator ie_b = new IntensityEstimator(spreadStep, nSteps, w, dt, sf);
+
+        // columnar test data
+        double[] bids = this.testData.stream().mapToDouble(td -> td.b).toArray();
+        double[] asks = this.testData.stream().mapToDouble(td -> td.a).toArray();
+        long[] ts = this.testData.stream().mapToLong(td -> td.ts).toArray();
+
+        int batchSize = 37;
+        for (int from = 0; from < ts.length; from += batchSize) {
+            int to = Math.min(from + batchSize, ts.length);
+            boolean initialized_t = false;
+            for (int i = from; i < to; i++) {
+                initialized_t = ie_t.onTick(bids[i], asks[i], ts[i]);
+            }
+            boolean initialized_b = ie_b.onTicks(bids, asks, ts, from, to);
+
+            assertEquals(initialized_t, initialized_b);
+            if (initialized_b) {
+                IntensityInfo ii_t = ie_t.estimate(ts[to - 1]);
+                IntensityInfo ii_b = ie_b.estimate(ts[to - 1]);
+
+                // assert values are same
+                assertEquals(ii_t.buyA, ii_b.buyA);
+                assertEquals(ii_t.buyK, ii_b.buyK);
+                assertEquals(ii_t.sellA, ii_b.sellA);
+                assertEquals(ii_t.sellK, ii_b.sellK);
+            }
+        }
+    }
+
+
+    /**
+     * Estimator restored from checkpoint in the middle of the data continues exactly as the original one
+     */
+    @Test
+    void checkpointRestoreTest() throws IOException {
+        Path checkpoint = Files.createTempFile("estimator", ".ckpt");
+        try {
+            for (WindowType windowType : WindowType.values()) {
+                AkSolverFactory sf = new AkSolverFactory(AkSolverFactory.SolverType.WEIGHTED_LOG_REGRESSION);
+                IntensityEstimator.Builder builder = new IntensityEstimator.Builder(spreadStep, nSteps, w, dt, sf)
+                        .windowType(windowType);
+                IntensityEstimator ie_o = builder.build();
+                IntensityEstimator ie_r = builder.build();
+
+                int half = this.testData.size() / 2;
+                for (final TickData td : this.testData.subList(0, half)) {
+                    if (ie_o.onTick(td.b, td.a, td.ts)) {
+                        ie_o.estimate(td.ts);
+                    }
+                }
+                ie_o.checkpoint(checkpoint);
+                ie_r.restore(checkpoint);
+                assertEquals(ie_o.latest().sellK, ie_r.latest().sellK);
+
+                for (final TickData td : this.testData.subList(half, this.testData.size())) {
+                    boolean initialized = ie_o.onTick(td.b, td.a, td.ts);
+                    assertEquals(initialized, ie_r.onTick(td.b, td.a, td.ts));
+                    if (initialized) {
+                        IntensityInfo ii_o = ie_o.estimate(td.ts);
+                        IntensityInfo ii_r = ie_r.estimate(td.ts);
+                        assertEquals(ii_o.buyA, ii_r.buyA);
+                        assertEquals(ii_o.buyK, ii_r.buyK);
+                        assertEquals(ii_o.sellA, ii_r.sellA);
+                        assertEquals(ii_o.sellK, ii_r.sellK);
+                    }
+                }
+            }
+
+            // checkpoint of other configuration is rejected
+            IntensityEstimator ie_c = new IntensityEstimator(spreadStep, nSteps + 1, w, dt,
+                    new AkSolverFactory(AkSolverFactory.SolverType.LOG_REGRESSION));
+            assertThrows(IllegalArgumentException.class, () -> ie_c.restore(checkpoint));
+
+            // checkpoint of decayed estimator is rejected by used sliding one, which continues unchanged
+            AkSolverFactory sf = new AkSolverFactory(AkSolverFactory.SolverType.WEIGHTED_LOG_REGRESSION);
+            IntensityEstimator.Builder builder = new IntensityEstimator.Builder(spreadStep, nSteps, w, dt, sf);
+            IntensityEstimator ie_u = builder.build();
+            IntensityEstimator ie_t = builder.build();
+            int half = this.testData.size() / 2;
+            for (final TickData td : this.testData.subList(0, half)) {
+                ie_u.onTick(td.b, td.a, td.ts);
+                ie_t.onTick(td.b, td.a, td.ts);
+            }
+            assertThrows(IllegalArgumentException.class, () -> ie_u.restore(checkpoint));
+            for (final TickData td : this.testData.subList(half, this.testData.size())) {
+                boolean initialized = ie_t.onTick(td.b, td.a, td.ts);
+                assertEquals(initialized, ie_u.onTick(td.b, td.a, td.ts));
+                if (initialized) {
+                    IntensityInfo ii_t = ie_t.estimate(td.ts);
+                    IntensityInfo ii_u = ie_u.estimate(td.ts);
+                    assertEquals(ii_t.buyK, ii_u.buyK);
+                    assertEquals(ii_t.sellK, ii_u.sellK);
+                }
+            }
+        } finally {
+            Files.delete(checkpoint);
+        }
+    }
+
+
+    @Test
+    void fixedPointTest() {
+        AkSolverFactory sf = new AkSolverFactory(AkSolverFactory.SolverType.LOG_REGRESSION);
+        IntensityEstimator.Builder builder = new IntensityEstimator.Builder(spreadStep, nSteps, w, dt, sf)
+                .tickSize(spreadStep);
+        IntensityEstimator ie_d = builder.build();
+        IntensityEstimator ie_t = builder.build();
+        int compared = 0;
+        for (final TickData td : this.testData) {
+            boolean initialized = ie_d.onTick(td.b, td.a, td.ts);
+            assertEquals(initialized, ie_t.onTickInTicks(Math.round(td.b / spreadStep), Math.round(td.a / spreadStep), td.ts));
+            if (initialized) {
+                IntensityInfo ii_d = ie_d.estimate(td.ts);
+                IntensityInfo ii_t = ie_t.estimate(td.ts);
+                assertEquals(ii_d.buyA, ii_t.buyA);
+                assertEquals(ii_d.buyK, ii_t.buyK);
+                assertEquals(ii_d.sellA, ii_t.sellA);
+                assertEquals(ii_d.sellK, ii_t.sellK);
+                compared += Double.isFinite(ii_t.sellK) ? 1 : 0;
+            }
+        }
+        assertTrue(compared > 0);
+
+        // spread step must be multiple of half tick
+        assertThrows(IllegalArgumentException.class, () -> new IntensityEstimator.Builder(spreadStep, nSteps, w, dt, sf)
+                .tickSize(spreadStep * 3).build());
+    }
+
+
+    @Test
+    void estimateIntoTest() {
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (AkSolverFactory.SolverType solverType : AkSolverFactory.SolverType.values()) {
+            IntensityEstimator ie = new IntensityEstimator(spreadStep, nSteps, w, dt, new AkSolverFactory(solverType));
+            MutableIntensityInfo out = new MutableIntensityInfo();
+            long lastTs = 0;
+            for (final TickData td : this.testData) {
+                if (ie.onTick(td.b, td.a, td.ts)) {
+                    IntensityInfo expected = ie.estimate(td.ts);
+                    assertSame(ie.estimateInto(out, td.ts), out);
+                    assertEquals(expected.buyA, out.buyA);
+                    assertEquals(expected.buyK, out.buyK);
+                    assertEquals(expected.sellA, out.sellA);
+                    assertEquals(expected.sellK, out.sellK);
+                }
+                lastTs = td.ts;
+            }
+
+            // warm up, then estimates must not allocate
+            for (int i = 0; i < 50_000; i++) {
+                ie.estimateInto(out, lastTs);
+            }
+            long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < 10_000; i++) {
+                ie.estimateInto(out, lastTs);
+            }
+            assertEquals(0, threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore, solverType.name());
+        }
+    }
+
+
+    @Test
+    void metricsTest() throws JMException {
+        AkSolverFactory sf = new AkSolverFactory(AkSolverFactory.SolverType.LOG_REGRESSION);
+        IntensityEstimator ie_n = new IntensityEstimator(spreadStep, nSteps, w, dt, sf);
+        assertNull(ie_n.metrics());
+
+        IntensityEstimator ie_m = new IntensityEstimator.Builder(spreadStep, nSteps, w, dt, sf)
+                .metrics("metricsTest")
+                .build();
+        EstimatorMetrics metrics = ie_m.metrics();
+        try {
+            int estimates = 0;
+            for (final TickData td : this.testData) {
+                if (ie_m.onTick(td.b, td.a, td.ts)) {
+                    ie_m.estimate(td.ts);
+                    estimates++;
+                }
+            }
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = metrics.getObjectName();
+            assertEquals((long) this.testData.size(), server.getAttribute(name, "TickCount"));
+            assertEquals((long) estimates, server.getAttribute(name, "EstimateCount"));
+            assertEquals(2L * estimates, server.getAttribute(name, "SolveCount"));
+            assertTrue((Long) server.getAttribute(name, "FillCount") > 0);
+            assertTrue(metrics.getTickLatencyP50Nanos() <= metrics.getTickLatencyP99Nanos());
+            assertTrue(metrics.getTickLatencyP99Nanos() <= metrics.getTickLatencyMaxNanos());
+
+            int[] liveCounts = (int[]) server.getAttribute(name, "SellLiveTrackerCounts");
+            assertEquals(nSteps, liveCounts.length);
+            for (int i = 1; i < nSteps; i++) {
+                assertTrue(liveCounts[i - 1] <= liveCounts[i]);
+            }
+            assertEquals(nSteps, metrics.getBuyFinishedTrackerCounts().length);
+
+            // duplicate name is rejected
+            assertThrows(IllegalStateException.class, () -> new IntensityEstimator.Builder(spreadStep, nSteps, w, dt, sf)
+                    .metrics("metricsTest")
+                    .build());
+        } finally {
+            metrics.unregister();
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(metrics.getObjectName()));
+    }
+
+
+    @Test
+    void flightRecorderEventsTest() throws IOException {
+        AkSolverFactory sf = new AkSolverFactory(AkSolverFactory.SolverType.LOG_REGRESSION);
+        IntensityEstimator ie = new IntensityEstimator.Builder(spreadStep, nSteps, w, dt, sf)
+                .instrument("flightRecorderEventsTest")
+                .build();
+        Path dump = Files.createTempFile("estimator", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(TickProcessedEvent.class).withThreshold(Duration.ZERO);
+            recording.enable(EstimateComputedEvent.class).withThreshold(Duration.ZERO);
+            recording.enable(SolverInvokedEvent.class).withThreshold(Duration.ZERO);
+            recording.start();
+            int estimates = 0;
+            for (final TickData td : this.testData) {
+                if (ie.onTick(td.b, td.a, td.ts)) {
+                    ie.estimate(td.ts);
+                    estimates++;
+                }
+            }
+            recording.stop();
+            recording.dump(dump);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+            List<RecordedEvent> ticks = events.stream()
+                    .filter(e -> e.getEventType().getName().equals("org.github.im1235.eie.TickProcessed"))
+                    .collect(Collectors.toList());
+            assertEquals(this.testData.size(), ticks.size());
+            assertEquals("flightRecorderEventsTest", ticks.get(0).getString("instrument"));
+            assertTrue(ticks.stream().mapToLong(e -> e.getLong("fills")).sum() > 0);
+            assertEquals(ticks.stream().mapToLong(e -> e.getLong("fills")).sum(),
+                    ie.getSellExecutionIntensity().getFillCount() + ie.getBuyExecutionIntensity().getFillCount());
+
+            List<RecordedEvent> estimateEvents = events.stream()
+                    .filter(e -> e.getEventType().getName().equals("org.github.im1235.eie.EstimateComputed"))
+                    .collect(Collectors.toList());
+            assertEquals(estimates, estimateEvents.size());
+            assertTrue(estimateEvents.stream().anyMatch(e -> e.getDouble("sellK") == ie.latest().sellK));
+            assertEquals(2 * estimates, events.stream()
+                    .filter(e -> e.getEventType().getName().equals("org.github.im1235.eie.SolverInvoked"))
+                    .count());
+        } finally {
+            Files.delete(dump);
+        }
+    }
+
+
+    /**
+     * Tests if snapshots published on tick are read without blocking and match estimates
+     */
+    @Test
+    void publishOnTickTest() throws InterruptedException {
+
+        // create solver factory
+        AkSolverFactory sf = new AkSolverFactory(AkSolverFactory.SolverType.MULTI_CURVE);
+        // create reference intensity estimator
+        IntensityEstimator ie_r = new IntensityEstimator(spreadStep, nSteps, w, dt, sf);
+
+        // create publishing intensity estimator
+        IntensityEstimator ie_p = new IntensityEstimator(spreadStep, nSteps, w, dt, sf);
+        ie_p.setPublishOnTick(true);
+
+        // reader thread only reads latest snapshots
+        AtomicBoolean done = new AtomicBoolean(false);
+        AtomicLong snapshotsRead = new AtomicLong();
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                IntensityInfo ii = ie_p.latest();
+                if (ii != null && ii.getBuyFillIntensity(testSpread) > 0) {
+                    snapshotsRead.incrementAndGet();
+                }
+            }
+        });
+        reader.start();
+
+        for (final TickData td : this.testData) {
+            boolean initialized = ie_r.onTick(td.b, td.a, td.ts);
+            ie_p.onTick(td.b, td.a, td.ts);
+            if (initialized) {
+                IntensityInfo ii_r = ie_r.estimate(td.ts);
+                IntensityInfo ii_p = ie_p.latest();
+
+                // assert values are same
+                assertEquals(ii_r.getBuyFillIntensity(testSpread), ii_p.getBuyFillIntensity(testSpread));
+                assertEquals(ii_r.getSellFillIntensity(testSpread), ii_p.getSellFillIntensity(testSpread));
+            } else {
+                assertNull(ie_p.latest());
+            }
+        }
+        done.set(true);
+        reader.join();
+        assertTrue(snapshotsRead.get() > 0);
+    }
+
+
+    /**
+     * Exponentially decayed estimator with half-life w calibrates to the same order of magnitude as sliding window
+     */
+    @Test
+    void exponentialDecayTest() {
+        AkSolverFactory sf = new AkSolverFactory(AkSolverFactory.SolverType.LOG_REGRESSION);
+        IntensityEstimator ie_s = new IntensityEstimator(spreadStep, nSteps, w, dt, sf);
+        IntensityEstimator ie_d = new IntensityEstimator.Builder(spreadStep, nSteps, w, dt, sf)
+                .windowType(WindowType.EXPONENTIAL_DECAY)
+                .build();
+
+        int compared = 0;
+        for (final TickData td : this.testData) {
+            boolean initialized = ie_s.onTick(td.b, td.a, td.ts);
+            ie_d.onTick(td.b, td.a, td.ts);
+            if (initialized && td.ts % 100 == 0) {
+                double sellIntensity = ie_s.estimate(td.ts).getSellFillIntensity(testSpread);
+                double decayedSellIntensity = ie_d.estimate(td.ts).getSellFillIntensity(testSpread);
+                if (sellIntensity > 0) {
+                    assertTrue(decayedSellIntensity > sellIntensity / 10 && decayedSellIntensity < sellIntensity * 10);
+                    compared++;
+                }
+            }
+        }
+        assertTrue(compared > 0);
+    }
+
+
+    /**
+     * Tests if event loop and single threaded execution give same result for all wait strategies
+     */
+    @Test
+    void eventLoopIdentityTest() throws IllegalAccessException {
+
+        // create solver factory
+        AkSolverFactory sf = new AkSolverFactory(AkSolverFactory.SolverType.MULTI_CURVE);
+
+        for (TickEventLoop.WaitStrategy waitStrategy : TickEventLoop.WaitStrategy.values()) {
+            if (waitStrategy == TickEventLoop.WaitStrategy.BUSY_SPIN && Runtime.getRuntime().availableProcessors() < 3) {
+                continue; // spinning producer and consumers need dedicated cores
+            }
+            // create single thread intensity estimator
+            IntensityEstimator ie_s = new IntensityEstimator(spreadStep, nSteps, w, dt, sf);
+
+            // create intensity estimator driven by event loop, small ring buffer to test wrapping
+            IntensityEstimator ie_e = new IntensityEstimator(spreadStep, nSteps, w, dt, sf);
+            try (TickEventLoop eventLoop = new TickEventLoop(ie_e, 64, waitStrategy, 16)) {
+                int tickIdx = 0;
+                for (final TickData td : ProgressBar.wrap(this.testData, "Event loop " + waitStrategy + " test: ")) {
+                    // send data to estimator
+                    boolean initialized_e = eventLoop.onTick(td.b, td.a, td.ts);
+                    boolean initialized_s = ie_s.onTick(td.b, td.a, td.ts);
+                    assertEquals(initialized_s, initialized_e);
+
+                    if (initialized_e && tickIdx++ % 100 == 0) {
+                        IntensityInfo ii_e = eventLoop.estimate(td.ts);
+                        IntensityInfo ii_s = ie_s.estimate(td.ts);
+
+                        // assert values are correct
+                        assertCorrectIntensities(ie_e);
+                        assertEquals(ii_s.getBuyFillIntensity(testSpread), ii_e.getBuyFillIntensity(testSpread));
+                        assertEquals(ii_s.getSellFillIntensity(testSpread), ii_e.getSellFillIntensity(testSpread));
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Exception thrown by consumer thread is rethrown to producer
+     */
+    @Test
+    void eventLoopFailureTest() {
+        AkSolverFactory sf = new AkSolverFactory(AkSolverFactory.SolverType.LOG_REGRESSION);
+        SpreadIntensityCurve failingCurve = new SpreadIntensityCurve(spreadStep, nSteps, dt, sf) {
+            @Override
+            public synchronized void onTicks(double[] bids, double[] asks, long[] ts, int from, int to, long w) {
+                throw new ArithmeticException("curve failed");
+            }
+        };
+        IntensityEstimator ie = new IntensityEstimator(spreadStep, nSteps, w, dt, sf) {
+            @Override
+            SpreadIntensityCurve getSellExecutionIntensity() {
+                return failingCurve;
+            }
+        };
+        TickEventLoop eventLoop = new TickEventLoop(ie, 64, TickEventLoop.WaitStrategy.PARK, 16);
+        TickData td = this.testData.get(0);
+        eventLoop.onTick(td.b, td.a, td.ts);
+        IllegalStateException e = assertThrows(IllegalStateException.class, eventLoop::awaitProcessed);
+        assertTrue(e.getCause() instanceof ArithmeticException);
+        assertThrows(IllegalStateException.class, () -> eventLoop.onTick(td.b, td.a, td.ts));
+        assertThrows(IllegalStateException.class, eventLoop::close);
+    }
+
+
     double[][] assertCorrectIntensities(IntensityEstimator fre) throws IllegalAccessException {
 
         SpreadIntensityCurve buyCurveBuilder = (SpreadIntensityCurve) buyLimitEstimatorField.get(fre);
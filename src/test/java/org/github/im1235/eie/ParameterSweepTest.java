@@ -0,0 +1,86 @@
+package org.github.im1235.eie;
+
+import org.github.im1235.eie.calibration.AkSolverFactory;
+import org.github.im1235.eie.replay.BinaryTickWriter;
+import org.github.im1235.eie.replay.TickReplay;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Compares single pass sweep over "src/test/resources/tick.csv" with separate estimators
+ */
+class ParameterSweepTest {
+
+    public ParameterSweepTest() {
+    }
+
+    double spreadStep = 0.00001;
+    long estimateInterval = 1000 * 60; // 1 min
+
+    @Test
+    void sweepIdentityTest() throws Exception {
+        Path binary = Files.createTempFile("tick", ".bin");
+        ExecutorService executor = EstimationExecutor.workStealing(3);
+        try {
+            BinaryTickWriter.convertCsv(Paths.get("src/test/resources/tick.csv"), binary);
+            TickReplay replay = new TickReplay(binary);
+
+            ParameterSweep sweep = new ParameterSweep(estimateInterval, 1000);
+            for (long w : new long[]{1000 * 60 * 10, 1000 * 60 * 30}) {
+                for (long dt : new long[]{1000 * 15, 1000 * 20}) {
+                    for (int nSpreads : new int[]{3, 5, 8}) {
+                        for (AkSolverFactory.SolverType solverType : AkSolverFactory.SolverType.values()) {
+                            sweep.add(spreadStep, nSpreads, w, dt, solverType);
+                        }
+                    }
+                }
+            }
+            List<ParameterSweep.Result> results = sweep.run(replay, executor);
+            int nConfigurations = 2 * 2 * 3 * AkSolverFactory.SolverType.values().length;
+            assertEquals(nConfigurations, results.size());
+            assertEquals(nConfigurations + 1, ParameterSweep.toTable(results).split("\n").length);
+
+            long origin = replay.timeStamp(0);
+            for (ParameterSweep.Result result : results) {
+                ParameterSweep.Configuration c = result.configuration;
+                IntensityEstimator ie = new IntensityEstimator(c.spreadStep, c.nSpreads, c.w, c.dt,
+                        new AkSolverFactory(c.solverType));
+                IntensitySeries series = result.estimates;
+                assertTrue(series.size() > 200);
+                assertEquals(origin + (c.w + estimateInterval - 1) / estimateInterval * estimateInterval, series.getTimeStamp(0));
+                int[] next = {0};
+                replay.replay((bid, ask, ts) -> {
+                    while (next[0] < series.size() && series.getTimeStamp(next[0]) < ts) {
+                        assertEstimate(series.get(next[0]), ie.estimate(series.getTimeStamp(next[0])));
+                        next[0]++;
+                    }
+                    ie.onTick(bid, ask, ts);
+                });
+                while (next[0] < series.size()) {
+                    assertEstimate(series.get(next[0]), ie.estimate(series.getTimeStamp(next[0])));
+                    next[0]++;
+                }
+            }
+        } finally {
+            executor.shutdown();
+            Files.delete(binary);
+        }
+    }
+
+    private static void assertEstimate(IntensityInfo actual, IntensityInfo expected) {
+        assertEquals(expected.buyA, actual.buyA);
+        assertEquals(expected.buyK, actual.buyK);
+        assertEquals(expected.sellA, actual.sellA);
+        assertEquals(expected.sellK, actual.sellK);
+    }
+
+}
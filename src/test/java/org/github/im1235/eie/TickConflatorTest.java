@@ -0,0 +1,81 @@
+package org.github.im1235.eie;
+
+import org.github.im1235.eie.calibration.AkSolverFactory;
+import org.github.im1235.eie.calibration.WindowType;
+import org.github.im1235.eie.replay.BinaryTickWriter;
+import org.github.im1235.eie.replay.TickReplay;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Compares estimates of conflated and unconflated ticks of "src/test/resources/tick.csv"
+ */
+class TickConflatorTest {
+
+    public TickConflatorTest() {
+    }
+
+    double spreadStep = 0.00001;
+    int nSteps = 5;
+    long w = 1000 * 60 * 10; // sliding window 10 min
+
+    @Test
+    void conflationIdentityTest() throws Exception {
+        Path binary = Files.createTempFile("tick", ".bin");
+        try {
+            BinaryTickWriter.convertCsv(Paths.get("src/test/resources/tick.csv"), binary);
+            TickReplay replay = new TickReplay(binary);
+            long initTs = replay.timeStamp(0) + w;
+
+            for (WindowType windowType : WindowType.values()) {
+                for (long dt : new long[]{1000 * 15, 7001}) {
+                    AkSolverFactory sf = new AkSolverFactory(AkSolverFactory.SolverType.LOG_REGRESSION);
+                    IntensityEstimator.Builder builder = new IntensityEstimator.Builder(spreadStep, nSteps, w, dt, sf)
+                            .windowType(windowType);
+                    IntensityEstimator reference = builder.build();
+                    IntensityEstimator conflated = builder.build();
+
+                    // estimate whenever conflated estimator has seen the current tick
+                    long[] forwardedTs = {Long.MIN_VALUE};
+                    TickConflator conflator = new TickConflator((bid, ask, ts) -> {
+                        conflated.onTick(bid, ask, ts);
+                        forwardedTs[0] = ts;
+                    }, dt);
+                    int[] compared = {0};
+                    replay.replay((bid, ask, ts) -> {
+                        reference.onTick(bid, ask, ts);
+                        conflator.onTick(bid, ask, ts);
+                        if (forwardedTs[0] == ts && ts > initTs) {
+                            assertSame(reference.estimate(ts), conflated.estimate(ts));
+                            compared[0]++;
+                        }
+                    });
+                    conflator.flush();
+                    long lastTs = replay.timeStamp(replay.count() - 1);
+                    assertSame(reference.estimate(lastTs), conflated.estimate(lastTs));
+
+                    assertEquals(replay.count(), conflator.getForwardedCount() + conflator.getMergedCount());
+                    assertTrue(conflator.getMergedCount() > 0);
+                    assertTrue(compared[0] > 100);
+                }
+            }
+        } finally {
+            Files.delete(binary);
+        }
+    }
+
+    private static void assertSame(IntensityInfo expected, IntensityInfo actual) {
+        assertEquals(expected.buyA, actual.buyA);
+        assertEquals(expected.buyK, actual.buyK);
+        assertEquals(expected.sellA, actual.sellA);
+        assertEquals(expected.sellK, actual.sellK);
+    }
+
+}
@@ -2,10 +2,12 @@ package org.github.im1235.eie.calibration;
 
 import org.github.im1235.eie.IntensityInfo;
 import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.util.Random;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -47,7 +49,56 @@ public class AkSolversTest {
         // stream of solvers to be tested
         return Stream.of(
                 Arguments.of(new AkMultiCurveSolver(spread), intensities),
-                Arguments.of(new AkRegressionSolver(spread), intensities)
+                Arguments.of(new AkRegressionSolver(spread), intensities),
+                Arguments.of(new AkWeightedRegressionSolver(spread), intensities),
+                Arguments.of(new AkLinearMultiCurveSolver(spread), intensities),
+                Arguments.of(new AkTheilSenSolver(spread), intensities)
         );
     }
+
+
+    @Test
+    void weightedSolverIgnoresSpreadsWithoutFills() {
+        double[] spread = new double[]{1, 2, 3, 4, 5};
+        double[] intensities = new double[spread.length];
+        double[] fillCounts = new double[]{400, 100, 30, 5, 0};
+        for (int i = 0; i < spread.length; i++) {
+            intensities[i] = fillCounts[i] == 0 ? 0 : IntensityInfo.getIntensity(spread[i], a, k);
+        }
+        double[] sln = new double[2];
+        new AkWeightedRegressionSolver(spread).solveAk(intensities, fillCounts, sln);
+        assertEquals(a, sln[0], eps, "A error");
+        assertEquals(k, sln[1], eps, "k error");
+    }
+
+
+    @Test
+    void linearMultiCurveMatchesPairwiseK() {
+        int n = 100;
+        double[] spread = new double[n];
+        double[] intensities = new double[n];
+        Random rng = new Random(42);
+        for (int i = 0; i < n; i++) {
+            spread[i] = i * 0.01;
+            intensities[i] = IntensityInfo.getIntensity(spread[i], a, k) * (1 + 0.1 * rng.nextGaussian());
+        }
+        double[] pairwise = new AkMultiCurveSolver(spread).solveAk(intensities);
+        double[] linear = new AkLinearMultiCurveSolver(spread).solveAk(intensities);
+        assertEquals(pairwise[1], linear[1], 1e-9, "k error");
+        assertEquals(a, linear[0], 0.1 * a, "A error");
+    }
+
+
+    @Test
+    void theilSenIgnoresOutlier() {
+        double[] spread = new double[]{1, 2, 3, 4, 5, 6, 7};
+        double[] intensities = new double[spread.length];
+        for (int i = 0; i < spread.length; i++) {
+            intensities[i] = IntensityInfo.getIntensity(spread[i], a, k);
+        }
+        intensities[5] *= 100;
+        double[] sln = new AkTheilSenSolver(spread).solveAk(intensities);
+        assertEquals(a, sln[0], eps, "A error");
+        assertEquals(k, sln[1], eps, "k error");
+    }
 }
@@ -0,0 +1,259 @@
+package org.github.im1235.eie.calibration;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Tests empirical and exponentially decayed intensity estimators on generated data
+ */
+class EmpiricalIntensityEstimatorTest {
+
+    public EmpiricalIntensityEstimatorTest() {
+    }
+
+    /**
+     * Once tracker buffers have grown to the size of the window, onTick and estimateIntensities must not allocate
+     */
+    @Test
+    void steadyStateDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        int w = 1000; // sliding window
+        int nTicks = 50 * w;
+        double[] mid = new double[nTicks];
+        Random rng = new Random(1);
+        mid[0] = 1000;
+        for (int i = 1; i < nTicks; i++) {
+            mid[i] = mid[i - 1] + rng.nextGaussian(); // simulate mid price
+        }
+
+        EmpiricalIntensityEstimator sellEstimator = new EmpiricalIntensityEstimator(new double[]{0, 1, 2, 3}, 1, 1);
+        EmpiricalIntensityEstimator buyEstimator = new EmpiricalIntensityEstimator(new double[]{0, -1, -2, -3}, -1, 1);
+        DecayedIntensityEstimator decayedEstimator = new DecayedIntensityEstimator(new double[]{0, 1, 2, 3}, 1, 1, w);
+        double[] sellIntensities = new double[4];
+        double[] buyIntensities = new double[4];
+        double[] decayedIntensities = new double[4];
+
+        // warm up, fill the window and let buffers reach their steady state size
+        for (int i = 0; i < nTicks / 2; i++) {
+            sellEstimator.onTick(mid[i], mid[i] - 0.5, i, i - w);
+            buyEstimator.onTick(mid[i], mid[i] + 0.5, i, i - w);
+            sellEstimator.estimateIntensities(i, i - w, sellIntensities);
+            buyEstimator.estimateIntensities(i, i - w, buyIntensities);
+            decayedEstimator.onTick(mid[i], mid[i] - 0.5, i, i - w);
+            decayedEstimator.estimateIntensities(i, i - w, decayedIntensities);
+        }
+
+        long overhead = threadBean.getThreadAllocatedBytes(threadId);
+        overhead = threadBean.getThreadAllocatedBytes(threadId) - overhead;
+
+        long allocated = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = nTicks / 2; i < nTicks; i++) {
+            sellEstimator.onTick(mid[i], mid[i] - 0.5, i, i - w);
+            buyEstimator.onTick(mid[i], mid[i] + 0.5, i, i - w);
+            sellEstimator.estimateIntensities(i, i - w, sellIntensities);
+            buyEstimator.estimateIntensities(i, i - w, buyIntensities);
+            decayedEstimator.onTick(mid[i], mid[i] - 0.5, i, i - w);
+            decayedEstimator.estimateIntensities(i, i - w, decayedIntensities);
+        }
+        allocated = threadBean.getThreadAllocatedBytes(threadId) - allocated - overhead;
+
+        assertTrue(sellIntensities[0] > 0 && buyIntensities[0] > 0 && decayedIntensities[0] > 0);
+        assertEquals(0, allocated, "bytes allocated on onTick / estimateIntensities path");
+    }
+
+
+    @Test
+    void fixedPointAvoidsRoundingFills() {
+        // 0.7 + 0.1 is 0.7999999999999999 in double arithmetic, bid 0.8 must not fill order at 0.8
+        EmpiricalIntensityEstimator doubleEstimator = new EmpiricalIntensityEstimator(new double[]{0, 0.1}, 1, 10);
+        EmpiricalIntensityEstimator fixedEstimator = new EmpiricalIntensityEstimator(new double[]{0, 0.1}, 1, 10, 0.1);
+        for (EmpiricalIntensityEstimator estimator : new EmpiricalIntensityEstimator[]{doubleEstimator, fixedEstimator}) {
+            estimator.onTick(0.7, 0.6, 0, -1000);
+            estimator.onTick(0.7, 0.8, 1, -999);
+        }
+        assertEquals(2, doubleEstimator.fillCount);
+        assertEquals(1, fixedEstimator.fillCount);
+
+        // same ticks passed as half ticks
+        EmpiricalIntensityEstimator halfTicksEstimator = new EmpiricalIntensityEstimator(new double[]{0, 0.1}, 1, 10, 0.1);
+        halfTicksEstimator.onTickHalfTicks(14, 12, 0, -1000);
+        halfTicksEstimator.onTickHalfTicks(14, 16, 1, -999);
+        assertEquals(1, halfTicksEstimator.fillCount);
+        double[] expected = new double[2];
+        double[] actual = new double[2];
+        fixedEstimator.estimateIntensities(5, -995, expected);
+        halfTicksEstimator.estimateIntensities(5, -995, actual);
+        assertArrayEquals(expected, actual);
+    }
+
+
+    /**
+     * Levels of uniform fixed point spreads are computed directly, integer double prices are searched level by level
+     */
+    @Test
+    void fixedPointLevelsMatchLevelSearch() {
+        Random rng = new Random(3);
+        for (double direction : new double[]{1, -1}) {
+            double[] spreads = new double[]{0, 2 * direction, 4 * direction, 6 * direction, 8 * direction};
+            EmpiricalIntensityEstimator searched = new EmpiricalIntensityEstimator(spreads, direction, 5);
+            EmpiricalIntensityEstimator computed = new EmpiricalIntensityEstimator(spreads, direction, 5, 2);
+            long mid = 10_000;
+            double[] expected = new double[spreads.length];
+            double[] actual = new double[spreads.length];
+            for (long ts = 0; ts < 20_000; ts++) {
+                mid += rng.nextInt(5) - 2;
+                long fill = mid + (long) direction * ((rng.nextInt(20) == 0 ? 12 : 0) - 1 - rng.nextInt(3));
+                searched.onTick(mid, fill, ts, ts - 500);
+                computed.onTickHalfTicks(mid, fill, ts, ts - 500);
+            }
+            searched.estimateIntensities(20_000, 19_500, expected);
+            computed.estimateIntensities(20_000, 19_500, actual);
+            assertArrayEquals(expected, actual);
+            assertEquals(searched.fillCount, computed.fillCount);
+            assertTrue(computed.fillCount > 1000);
+        }
+    }
+
+
+    /**
+     * Finished fills are aggregated per tracker start slot, number of slots is bounded by w / dt at any fill rate
+     */
+    @Test
+    void memoryIsBoundedByWindow() {
+        long w = 1000;
+        long dt = 10;
+        EmpiricalIntensityEstimator estimator = new EmpiricalIntensityEstimator(new double[]{0, 1, 2, 3}, 1, dt);
+        double[] intensities = new double[4];
+        Random rng = new Random(4);
+        double mid = 1000;
+        // 100 ticks per dt, mid price oscillates so orders are filled at all levels many times per bucket
+        for (long ts = 0; ts < 100 * w; ts++) {
+            for (int i = 0; i < 10; i++) {
+                mid += 4 * rng.nextGaussian();
+                estimator.onTick(mid, mid - 0.5, ts, ts - w);
+            }
+        }
+        estimator.estimateIntensities(100 * w, 99 * w, intensities);
+        assertTrue(intensities[3] > 0);
+        assertTrue(estimator.trackersCount <= w / dt + 1);
+        assertTrue(estimator.trackerStartTs.length < 2 * (w / dt + 1));
+    }
+
+
+    /**
+     * Decayed estimator drops trackers filled at all levels, only unfilled trackers are stored
+     */
+    @Test
+    void decayedStoresOnlyUnfilledTrackers() {
+        long w = 1000;
+        long dt = 10;
+        DecayedIntensityEstimator estimator = new DecayedIntensityEstimator(new double[]{0, 1, 2, 3}, 1, dt, w);
+        double[] intensities = new double[4];
+        int[] liveCounts = new int[4];
+        // every 5th tick fills orders at all levels
+        for (long ts = 0; ts < 100 * w; ts++) {
+            estimator.onTick(1000, ts % 5 == 4 ? 1010 : 999.5, ts, ts - w);
+        }
+        estimator.estimateIntensities(100 * w, 99 * w, intensities);
+        estimator.getLiveTrackerCounts(liveCounts);
+        assertTrue(intensities[3] > 0);
+        assertEquals(liveCounts[3], estimator.trackersCount);
+        assertTrue(estimator.trackersCount <= 1);
+        assertEquals(AbstractIntensityEstimator.INITIAL_CAPACITY, estimator.trackerStartTs.length);
+    }
+
+
+    /**
+     * Ticks that can not insert, expire or fill a tracker skip the scan of live trackers
+     */
+    @Test
+    void unchangedQuotesSkipScan() {
+        EmpiricalIntensityEstimator estimator = new EmpiricalIntensityEstimator(new double[]{0, 1, 2}, 1, 10);
+        estimator.onTick(100, 99.5, 0, -1000); // inserts tracker, orders at 100, 101, 102
+        for (long ts = 1; ts < 5; ts++) {
+            estimator.onTick(100, 99.5, ts, ts - 1000);
+        }
+        assertEquals(4, estimator.skippedScanCount);
+        assertEquals(0, estimator.fillCount);
+
+        estimator.onTick(100, 101.5, 5, -995); // fills orders at 100 and 101
+        assertEquals(4, estimator.skippedScanCount);
+        assertEquals(2, estimator.fillCount);
+        estimator.onTick(100, 101.5, 6, -994); // best unfilled order is 102
+        assertEquals(5, estimator.skippedScanCount);
+
+        estimator.onTick(100, 99.5, 10, -990); // inserts tracker
+        assertEquals(5, estimator.skippedScanCount);
+        estimator.onTick(100, 99.5, 11, 8); // expires first tracker
+        assertEquals(5, estimator.skippedScanCount);
+        assertEquals(1, estimator.trackersCount);
+    }
+
+
+    /**
+     * With half-life much longer than the data decay weights are close to 1 and estimate equals the window with all data
+     */
+    @Test
+    void decayedConvergesToSlidingWindowWithLongHalfLife() {
+        long halfLife = 1000_000_000_000L;
+        double[] spreads = new double[]{0, 1, 2, 3};
+        EmpiricalIntensityEstimator sliding = new EmpiricalIntensityEstimator(spreads, 1, 10);
+        DecayedIntensityEstimator decayed = new DecayedIntensityEstimator(spreads, 1, 10, halfLife);
+        double[] slidingIntensities = new double[spreads.length];
+        double[] decayedIntensities = new double[spreads.length];
+
+        Random rng = new Random(2);
+        double mid = 1000;
+        for (int i = 0; i < 20000; i++) {
+            mid += rng.nextGaussian();
+            sliding.onTick(mid, mid - 0.5, i, i - halfLife);
+            decayed.onTick(mid, mid - 0.5, i, i - halfLife);
+        }
+        sliding.estimateIntensities(20000, 20000 - halfLife, slidingIntensities);
+        decayed.estimateIntensities(20000, 20000 - halfLife, decayedIntensities);
+        for (int i = 0; i < spreads.length; i++) {
+            assertTrue(slidingIntensities[i] > 0);
+            assertEquals(slidingIntensities[i], decayedIntensities[i], 1e-6 * slidingIntensities[i]);
+        }
+    }
+
+
+    /**
+     * Stationary mid price, decayed estimate with half-life w is close to sliding window estimate of width w,
+     * both censor trackers not filled within w
+     */
+    @Test
+    void decayedMatchesSlidingWindowOnStationaryData() {
+        int w = 2000;
+        double[] spreads = new double[]{0, 1, 2, 3};
+        EmpiricalIntensityEstimator sliding = new EmpiricalIntensityEstimator(spreads, 1, 1);
+        DecayedIntensityEstimator decayed = new DecayedIntensityEstimator(spreads, 1, 1, w);
+        double[] slidingIntensities = new double[spreads.length];
+        double[] decayedIntensities = new double[spreads.length];
+
+        Random rng = new Random(3);
+        double mid = 1000;
+        // long enough to rescale decay weights several times
+        int nTicks = 200 * w;
+        for (int i = 0; i < nTicks; i++) {
+            mid += rng.nextGaussian();
+            sliding.onTick(mid, mid - 0.5, i, i - w);
+            decayed.onTick(mid, mid - 0.5, i, i - w);
+        }
+        sliding.estimateIntensities(nTicks, nTicks - w, slidingIntensities);
+        decayed.estimateIntensities(nTicks, nTicks - w, decayedIntensities);
+        for (int i = 0; i < spreads.length; i++) {
+            assertEquals(slidingIntensities[i], decayedIntensities[i], 0.2 * slidingIntensities[i]);
+        }
+    }
+
+}
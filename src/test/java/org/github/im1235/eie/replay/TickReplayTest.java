@@ -0,0 +1,109 @@
+package org.github.im1235.eie.replay;
+
+import org.github.im1235.eie.IntensityEstimator;
+import org.github.im1235.eie.IntensityInfo;
+import org.github.im1235.eie.calibration.AkSolverFactory;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+
+/**
+ * Tests conversion of "src/test/resources/tick.csv" to binary format and its replay
+ */
+class TickReplayTest {
+
+    public TickReplayTest() {
+    }
+
+    /**
+     * estimator configuration
+     */
+    double spreadStep = 0.00001;
+    int nSteps = 5;
+    long w = 1000 * 60 * 10; // sliding window 10 min
+    long dt = 1000 * 15; // time scaling 15 sec
+
+    /**
+     * Replays binary file mapped in small segments and compares estimate with estimator fed from csv
+     */
+    @Test
+    void replayIdentityTest() throws IOException {
+        Path csv = Paths.get("src/test/resources/tick.csv");
+        Path binary = Files.createTempFile("tick", ".bin");
+        try {
+            long converted = BinaryTickWriter.convertCsv(csv, binary);
+            List<String[]> testData = Files.lines(csv)
+                    .map(line -> line.split(","))
+                    .collect(Collectors.toList());
+            assertEquals(testData.size(), converted);
+            assertEquals(BinaryTickWriter.HEADER_SIZE + converted * BinaryTickWriter.RECORD_SIZE, Files.size(binary));
+
+            AkSolverFactory sf = new AkSolverFactory(AkSolverFactory.SolverType.LOG_REGRESSION);
+            IntensityEstimator ie_c = new IntensityEstimator(spreadStep, nSteps, w, dt, sf);
+            IntensityEstimator ie_b = new IntensityEstimator(spreadStep, nSteps, w, dt, sf);
+
+            long lastTs = 0;
+            for (String[] parts : testData) {
+                lastTs = Long.parseLong(parts[2]);
+                ie_c.onTick(Double.parseDouble(parts[0]), Double.parseDouble(parts[1]), lastTs);
+            }
+
+            // segment size not dividing number of ticks
+            TickReplay replay = new TickReplay(binary, 997);
+            assertEquals(converted, replay.count());
+            assertEquals(converted, replay.replay(ie_b::onTick));
+
+            IntensityInfo ii_c = ie_c.estimate(lastTs);
+            IntensityInfo ii_b = ie_b.estimate(lastTs);
+            assertEquals(ii_c.buyA, ii_b.buyA);
+            assertEquals(ii_c.buyK, ii_b.buyK);
+            assertEquals(ii_c.sellA, ii_b.sellA);
+            assertEquals(ii_c.sellK, ii_b.sellK);
+
+            // partial replay
+            long[] replayed = new long[1];
+            assertEquals(1000, replay.replay((bid, ask, ts) -> replayed[0]++, 500, 1500));
+            assertEquals(1000, replayed[0]);
+        } finally {
+            Files.delete(binary);
+        }
+    }
+
+    @Test
+    void rejectsNonBinaryFile() {
+        TickReplay replay = new TickReplay(Paths.get("src/test/resources/tick.csv"));
+        assertThrows(IOException.class, replay::count);
+    }
+
+    /**
+     * First line is converted as tick unless it is header
+     */
+    @Test
+    void convertCsvDetectsHeader() throws IOException {
+        Path csv = Files.createTempFile("tick", ".csv");
+        Path binary = Files.createTempFile("tick", ".bin");
+        try {
+            Files.write(csv, Arrays.asList("1.5,1.6,100", "1.4,1.7,200"));
+            assertEquals(2, BinaryTickWriter.convertCsv(csv, binary));
+            assertEquals(100, new TickReplay(binary).timeStamp(0));
+
+            Files.write(csv, Arrays.asList("bid,ask,ts", "1.5,1.6,100", "1.4,1.7,200"));
+            assertEquals(2, BinaryTickWriter.convertCsv(csv, binary));
+            assertEquals(100, new TickReplay(binary).timeStamp(0));
+        } finally {
+            Files.delete(csv);
+            Files.delete(binary);
+        }
+    }
+
+}